@@ -9,18 +9,31 @@
 
 package de.dereingerostete.ngrok;
 
+import de.dereingerostete.ngrok.cli.HeadlessLauncher;
 import de.dereingerostete.ngrok.client.NgrokClient;
+import de.dereingerostete.ngrok.client.Notifier;
+import de.dereingerostete.ngrok.control.ControlServer;
+import de.dereingerostete.ngrok.detect.LatestLogWatcher;
 import de.dereingerostete.ngrok.gui.NgrokGUI;
+import de.dereingerostete.ngrok.gui.panel.ActivePanel;
 import de.dereingerostete.ngrok.gui.panel.LoadingPanel;
 import de.dereingerostete.ngrok.gui.panel.MainPanel;
+import de.dereingerostete.ngrok.jfr.FlightRecording;
+import de.dereingerostete.ngrok.util.FontRegistry;
+import de.dereingerostete.ngrok.util.GUIUtils;
 import de.dereingerostete.ngrok.util.LAFManager;
-import de.dereingerostete.ngrok.util.UpdateInfo;
+import de.dereingerostete.ngrok.util.StartupPipeline;
+import de.dereingerostete.ngrok.util.config.ConfigChange;
+import de.dereingerostete.ngrok.util.config.ConfigStore;
 import de.dereingerostete.ngrok.util.config.ConfigUtils;
+import de.dereingerostete.ngrok.util.config.ConfigWatcher;
 import de.dereingerostete.ngrok.util.config.Configuration;
+import de.dereingerostete.ngrok.util.config.ControlApi;
 import de.dereingerostete.ngrok.util.config.ReadOnlyConfig;
 import de.dereingerostete.ngrok.util.config.Theming;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,110 +41,273 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 public class Bootstrap {
     public static final @NotNull File DATA_FOLDER = loadDateFolder();
     public static final @NotNull Logger LOGGER = LoggerFactory.getLogger("NgrokGUI");
+    private static final long CONFIG_SAVE_DELAY_MILLIS = 500;
+    private static final long CONFIG_RELOAD_DELAY_MILLIS = 300;
     private static @Getter LAFManager lafManager;
     private static @Getter NgrokGUI gui;
     private static @Getter NgrokClient client;
+    private static @Nullable LatestLogWatcher logWatcher;
+    private static @Nullable ControlServer controlServer;
+    private static @Nullable ConfigWatcher configWatcher;
 
     // Config
     private static @Getter ReadOnlyConfig readOnlyConfig;
     private static @Getter Configuration configuration;
     private static @Getter File configFile;
+    private static @Getter ConfigStore configStore;
 
     public static void main(String[] args) {
+        if (HeadlessLauncher.isRequested(args)) {
+            HeadlessLauncher.launch(args);
+            return;
+        }
+
         LOGGER.info("Starting Ngrok Minecraft GUI");
+        StartupPipeline pipeline = new StartupPipeline(3);
+        Executor eventQueue = EventQueue::invokeLater;
 
-        try {
-            LOGGER.info("Loading config file");
-            configFile = new File(DATA_FOLDER, "config.yml");
-            configuration = Configuration.getConfiguration(configFile);
+        pipeline.stage("config", () -> {
+            try {
+                loadConfig();
+            } catch (IOException exception) {
+                LOGGER.error("Failed to load config file", exception);
+                JOptionPane.showMessageDialog(null,
+                        "Failed to load config. Please try again!",
+                        "Unexpected error", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+            }
+        });
+
+        pipeline.stage("flight-recorder", () -> {
+            if (readOnlyConfig.isFlightRecorder()) FlightRecording.start(DATA_FOLDER);
+        }, "config");
+
+        pipeline.stage("fonts", FontRegistry::load);
+
+        pipeline.stage("minecraft-instance", () -> {
+            try {
+                File minecraftDir = ConfigUtils.detectMinecraftInstance();
+                if (minecraftDir != null) {
+                    configuration.setMinecraftFolder(minecraftDir.getCanonicalPath());
+                    configStore.save();
+                }
+            } catch (IOException exception) {
+                LOGGER.warn("Failed to set and save minecraft folder", exception);
+            }
+        }, "config");
+
+        pipeline.stage("look-and-feel", () -> {
+            try {
+                LOGGER.info("Loading theme");
+                Theming theming = readOnlyConfig.getTheming();
+                lafManager = new LAFManager(theming);
+                lafManager.load();
+            } catch (IOException exception) {
+                LOGGER.error("Failed to update look and feel", exception);
+            }
+        }, "config");
+
+        pipeline.stage("ngrok-client", () -> {
+            LOGGER.info("Checking ngrok cli");
+            createClient((title, message) -> GUIUtils.showWarning(null, title, message));
+        }, "config");
+
+        pipeline.stage("control-api", Bootstrap::startControlServer, "ngrok-client");
+
+        pipeline.stage("gui", () -> {
+            gui = new NgrokGUI();
+            gui.setVisible(true);
+        }, eventQueue, "look-and-feel"); // Shows the fallback font until the fonts stage finished
+
+        pipeline.stage("ngrok-binary", () -> {
+            if (client.isDownloaded()) return;
+
+            LoadingPanel loadingPanel = (LoadingPanel) gui.getActivePanel();
+            LOGGER.info("Downloading ngrok");
+            loadingPanel.setInfo("Downloading ngrok...");
+            client.download(loadingPanel::setProgress);
+            client.markUpdateChecked(); // A fresh download is the latest version
+        }, "gui", "ngrok-client");
+
+        pipeline.stage("main-panel", () -> {
+            LOGGER.info("Changing to main interface");
+            gui.showMainPanel();
+        }, eventQueue, "ngrok-binary");
+
+        pipeline.stage("config-watcher", () -> {
+            ConfigWatcher watcher = startConfigWatcher();
+            if (watcher != null) watcher.addListener(Bootstrap::handleConfigChanges);
+        }, "main-panel");
+
+        // Updates are checked in the background and applied on the next tunnel start
+        pipeline.stage("update-check", () -> client.checkForUpdates(), "main-panel");
+        pipeline.stage("log-watcher", Bootstrap::restartLogWatcher, "main-panel");
+        pipeline.finish();
+    }
+
+    /**
+     * Loads the config and the additional config from the data folder
+     */
+    public static void loadConfig() throws IOException {
+        LOGGER.info("Loading config file");
+        configFile = new File(DATA_FOLDER, "config.yml");
+        configuration = Configuration.getConfiguration(configFile);
+        configStore = new ConfigStore(configFile, configuration, CONFIG_SAVE_DELAY_MILLIS);
+
+        File additionalConfigFile = new File(DATA_FOLDER, "additional-config.yml");
+        readOnlyConfig = ReadOnlyConfig.getConfiguration(additionalConfigFile);
+    }
+
+    /**
+     * Creates the Ngrok client. Requires the config to be loaded.
+     *
+     * @param notifier Shows warnings to the user, either as dialog or as log message
+     */
+    @NotNull
+    public static NgrokClient createClient(@NotNull Notifier notifier) throws IOException {
+        client = new NgrokClient(notifier);
+        return client;
+    }
+
+    /**
+     * Starts the control API if it is enabled. Requires the client to be created.
+     */
+    public static void startControlServer() {
+        ControlApi config = readOnlyConfig.getControlApi();
+        if (!config.isEnabled()) return;
 
-            File additionalConfigFile = new File(DATA_FOLDER, "additional-config.yml");
-            readOnlyConfig = ReadOnlyConfig.getConfiguration(additionalConfigFile);
+        try {
+            controlServer = new ControlServer(client.getTunnelManager(), config);
+            controlServer.start();
         } catch (IOException exception) {
-            LOGGER.error("Failed to load config file", exception);
-            JOptionPane.showMessageDialog(null,
-                    "Failed to load config. Please try again!",
-                    "Unexpected error", JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
+            LOGGER.warn("Failed to start the control API on port " + config.getPort(), exception);
         }
+    }
 
+    /**
+     * Starts applying edits of the config files while running
+     *
+     * @return the watcher or null if the data folder could not be watched
+     */
+    @Nullable
+    public static ConfigWatcher startConfigWatcher() {
         try {
-            File minecraftDir = ConfigUtils.detectMinecraftInstance();
-            if (minecraftDir != null) {
-                configuration.setMinecraftFolder(minecraftDir.getCanonicalPath());
-                configuration.save(configFile);
-            }
+            ConfigWatcher watcher = new ConfigWatcher(DATA_FOLDER.toPath(), configStore, readOnlyConfig, CONFIG_RELOAD_DELAY_MILLIS);
+            watcher.start();
+            configWatcher = watcher;
+            return watcher;
         } catch (IOException exception) {
-            LOGGER.warn("Failed to set and save minecraft folder", exception);
+            LOGGER.warn("Failed to watch the config files for changes", exception);
+            return null;
+        }
+    }
+
+    /**
+     * Applies edited config values to the GUI and the health check. Other Ngrok settings are read again with the next agent start.
+     */
+    private static void handleConfigChanges(@NotNull List<ConfigChange> changes) {
+        for (ConfigChange change : changes) {
+            if (change.is(ConfigChange.Source.ADDITIONAL_CONFIG, "theming")) {
+                reloadTheme();
+            } else if (change.is(ConfigChange.Source.ADDITIONAL_CONFIG, "healthCheck")) {
+                client.getTunnelManager().rescheduleHealthCheck();
+            } else if (change.is(ConfigChange.Source.ADDITIONAL_CONFIG, "watchLatestLog")) {
+                restartLogWatcher();
+            } else if (change.is(ConfigChange.Source.CONFIG, "minecraftFolder")) {
+                restartLogWatcher();
+                String folder = configuration.getMinecraftFolder();
+                EventQueue.invokeLater(() -> {
+                    ActivePanel activePanel = gui.getActivePanel();
+                    if (activePanel instanceof MainPanel) ((MainPanel) activePanel).setFolderPath(folder);
+                });
+            } else if (change.is(ConfigChange.Source.CONFIG, "defaultPort")) {
+                int port = configuration.getDefaultPort();
+                EventQueue.invokeLater(() -> {
+                    ActivePanel activePanel = gui.getActivePanel();
+                    if (activePanel instanceof MainPanel) ((MainPanel) activePanel).setDefaultPort(port);
+                });
+            }
         }
+    }
 
+    /**
+     * Loads the changed theme and updates the open window
+     */
+    private static void reloadTheme() {
         try {
-            LOGGER.info("Loading theme");
-            Theming theming = readOnlyConfig.getTheming();
-            lafManager = new LAFManager(theming);
-            lafManager.load();
-        } catch (IOException exception) {
-            LOGGER.error("Failed to update look and feel", exception);
+            LOGGER.info("Reloading theme");
+            LAFManager previous = lafManager;
+            LAFManager manager = new LAFManager(readOnlyConfig.getTheming());
+            manager.load();
+            lafManager = manager;
+
+            // The old theme's class loader may only be closed once no component uses it anymore
+            EventQueue.invokeAndWait(gui::updateLookAndFeel);
+            if (previous != null) previous.close();
+        } catch (IOException | IllegalStateException | InvocationTargetException exception) {
+            LOGGER.warn("Failed to apply the changed theme", exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        Thread ngrokCheckThread = new Thread(() -> {
-            try {
-                LoadingPanel loadingPanel = (LoadingPanel) gui.getActivePanel();
-                loadingPanel.setInfo("Checking Ngrok CLI...");
-                LOGGER.info("Checking ngrok cli");
-
-                client = new NgrokClient();
-                if (client.isDownloaded()) {
-                    LOGGER.info("Checking for ngrok updates");
-                    loadingPanel.setInfo("Checking for ngrok updates...");
-
-                    UpdateInfo info = client.update();
-                    boolean updating = info.getUpdatingFuture().get(5, TimeUnit.MINUTES);
-                    if (updating) loadingPanel.setInfo("Updating ngrok...");
-
-                    info.getCompletionFuture().get(5, TimeUnit.MINUTES);
-                } else {
-                    LOGGER.info("Downloading ngrok");
-                    loadingPanel.setInfo("Downloading ngrok...");
-                    client.download();
-                }
+    /**
+     * (Re)starts following the latest.log of the configured Minecraft folder
+     */
+    public static synchronized void restartLogWatcher() {
+        try {
+            if (logWatcher != null) logWatcher.close();
+            logWatcher = null;
 
-                // Switch to main GUI
-                LOGGER.info("Changing to main interface");
-                gui.changePanel(new MainPanel());
-            } catch (IOException | InterruptedException | ExecutionException | TimeoutException exception) {
-                LOGGER.warn("Failed to check ngrok", exception);
-            }
-        }, "NgrokCheckThread");
+            String folder = configuration.getMinecraftFolder();
+            if (!readOnlyConfig.isWatchLatestLog() || folder == null || folder.isBlank()) return;
 
-        EventQueue.invokeLater(() -> {
-            try {
-                gui = new NgrokGUI();
-                gui.setVisible(true);
-                ngrokCheckThread.start();
-            } catch (Exception exception) {
-                LOGGER.warn("GUI threw exception", exception);
-            }
-        });
+            LatestLogWatcher watcher = new LatestLogWatcher(new File(folder).toPath(), port ->
+                    EventQueue.invokeLater(() -> {
+                        ActivePanel activePanel = gui.getActivePanel();
+                        if (activePanel instanceof MainPanel) ((MainPanel) activePanel).handleDetectedPort(port);
+                    }));
+            watcher.start();
+            logWatcher = watcher;
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to watch Minecraft's latest.log", exception);
+        }
     }
 
     public static void handleExit() {
         LOGGER.info("Starting shutdown handlers");
 
-        try {
-            LOGGER.info("Closing the look and feel manager");
-            Bootstrap.getLafManager().close();
-        } catch (IOException exception) {
-            LOGGER.warn("Failed to close the look and feel manager");
+        if (controlServer != null) controlServer.close();
+        if (configWatcher != null) {
+            try {
+                configWatcher.close();
+            } catch (IOException exception) {
+                LOGGER.warn("Failed to close the config watcher", exception);
+            }
+        }
+
+        if (configStore != null) {
+            LOGGER.info("Saving the config");
+            configStore.flush();
+        }
+
+        if (lafManager != null) {
+            try {
+                LOGGER.info("Closing the look and feel manager");
+                lafManager.close();
+            } catch (IOException exception) {
+                LOGGER.warn("Failed to close the look and feel manager");
+            }
         }
 
+        FlightRecording.stop();
         LOGGER.info("Done. Bye!");
     }
 
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.cli;
+
+import de.dereingerostete.ngrok.Bootstrap;
+import de.dereingerostete.ngrok.client.NgrokClient;
+import de.dereingerostete.ngrok.client.Tunnel;
+import de.dereingerostete.ngrok.client.TunnelManager;
+import de.dereingerostete.ngrok.client.TunnelState;
+import de.dereingerostete.ngrok.jfr.FlightRecording;
+import de.dereingerostete.ngrok.util.ProgressListener;
+import de.dereingerostete.ngrok.util.config.ConfigChange;
+import de.dereingerostete.ngrok.util.config.ConfigUtils;
+import de.dereingerostete.ngrok.util.config.ConfigWatcher;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Runs the tunnels without any window, e.g. on a server or in a script.
+ * Public addresses are printed to stdout as "&lt;port&gt; &lt;address&gt;" and optionally written to a file,
+ * while log messages go to stderr. No Swing or AWT class is loaded in this mode.
+ * <p>
+ * Usage: {@code --headless [--port <port>]... [--detect] [--output <file>]}
+ */
+public class HeadlessLauncher {
+    private static final @NotNull String USAGE = "Usage: --headless [--port <port>]... [--detect] [--output <file>]";
+    private final @NotNull Set<Integer> ports;
+    private final boolean detect;
+    private final @Nullable Path outputFile;
+    private final @NotNull Map<Integer, String> printedAddresses;
+    private final @NotNull CountDownLatch shutdownLatch;
+
+    private HeadlessLauncher(@NotNull Set<Integer> ports, boolean detect, @Nullable Path outputFile) {
+        this.ports = ports;
+        this.detect = detect;
+        this.outputFile = outputFile;
+        this.printedAddresses = new HashMap<>();
+        this.shutdownLatch = new CountDownLatch(1);
+    }
+
+    /**
+     * @return true if the headless mode was requested with "--headless" or no display is available
+     */
+    public static boolean isRequested(@NotNull String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--headless")) return true;
+        }
+
+        // Only checks the system property and environment, this does not initialize the AWT toolkit
+        return GraphicsEnvironment.isHeadless();
+    }
+
+    /**
+     * Parses the arguments and runs the tunnels until the process is terminated
+     */
+    public static void launch(@NotNull String[] args) {
+        System.setProperty("consoleTarget", "SYSTEM_ERR");
+        LoggerContext.getContext(false).reconfigure(); // Keep stdout free for the addresses
+
+        HeadlessLauncher launcher;
+        try {
+            launcher = parse(args);
+        } catch (IllegalArgumentException exception) {
+            System.err.println(exception.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            launcher.run();
+        } catch (IOException exception) {
+            LOGGER.error("Failed to start Ngrok", exception);
+            System.exit(1);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NotNull
+    private static HeadlessLauncher parse(@NotNull String[] args) {
+        Set<Integer> ports = new LinkedHashSet<>();
+        boolean detect = false;
+        Path outputFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--headless":
+                    break;
+                case "--detect":
+                    detect = true;
+                    break;
+                case "--port":
+                    ports.add(parsePort(getValue(args, ++i, arg)));
+                    break;
+                case "--output":
+                    outputFile = Paths.get(getValue(args, ++i, arg));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return new HeadlessLauncher(ports, detect, outputFile);
+    }
+
+    @NotNull
+    private static String getValue(@NotNull String[] args, int index, @NotNull String name) {
+        if (index >= args.length) throw new IllegalArgumentException("Missing value for " + name);
+        return args[index];
+    }
+
+    private static int parsePort(@NotNull String value) {
+        try {
+            int port = Integer.parseInt(value);
+            if (port >= 1 && port <= 65535) return port;
+        } catch (NumberFormatException ignored) {}
+        throw new IllegalArgumentException("Invalid port: " + value);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        LOGGER.info("Starting Ngrok Minecraft GUI in headless mode");
+        Bootstrap.loadConfig();
+        if (Bootstrap.getReadOnlyConfig().isFlightRecorder()) FlightRecording.start(Bootstrap.DATA_FOLDER);
+
+        NgrokClient client = Bootstrap.createClient((title, message) -> LOGGER.warn(title + ": " + message));
+        if (!client.hasAuthToken()) {
+            LOGGER.error("Auth token is missing. Please set 'authToken' in " + Bootstrap.getConfigFile());
+            System.exit(1);
+            return;
+        }
+
+        if (client.isDownloaded()) {
+            client.checkForUpdates();
+        } else {
+            LOGGER.info("Downloading ngrok");
+            client.download(new LoggingProgress());
+            client.markUpdateChecked(); // A fresh download is the latest version
+        }
+
+        Bootstrap.startControlServer();
+        Set<Integer> tunnelPorts = resolvePorts();
+        TunnelManager manager = client.getTunnelManager();
+        ConfigWatcher watcher = Bootstrap.startConfigWatcher(); // Edited Ngrok settings are used with the next agent start
+        if (watcher != null) watcher.addListener(changes -> {
+            boolean healthCheckChanged = changes.stream()
+                    .anyMatch(change -> change.is(ConfigChange.Source.ADDITIONAL_CONFIG, "healthCheck"));
+            if (healthCheckChanged) manager.rescheduleHealthCheck();
+        });
+        manager.addListener(this::handleTunnelsChanged);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            LOGGER.info("Closing Ngrok process");
+            manager.shutdown();
+            Bootstrap.handleExit();
+            shutdownLatch.countDown();
+        }, "ClosingThread"));
+
+        for (int port : tunnelPorts) {
+            LOGGER.info("Opening tunnel for port " + port);
+            manager.openTunnel(port);
+        }
+        shutdownLatch.await();
+    }
+
+    @NotNull
+    private Set<Integer> resolvePorts() {
+        Set<Integer> result = new LinkedHashSet<>(ports);
+        if (detect) {
+            OptionalInt detectedPort = ConfigUtils.detectMinecraftPort();
+            if (detectedPort.isPresent()) {
+                LOGGER.info("Detected Minecraft port " + detectedPort.getAsInt());
+                result.add(detectedPort.getAsInt());
+            } else {
+                LOGGER.warn("No Minecraft port was detected");
+            }
+        }
+
+        if (result.isEmpty()) result.add(Bootstrap.getConfiguration().getDefaultPort());
+        return result;
+    }
+
+    private synchronized void handleTunnelsChanged(@NotNull List<Tunnel> tunnels) {
+        Map<Integer, String> addresses = new HashMap<>();
+        for (Tunnel tunnel : tunnels) {
+            String url = tunnel.getUrl();
+            if (tunnel.getState() == TunnelState.OFFLINE || tunnel.getState() == TunnelState.STARTING || url == null) continue;
+            addresses.put(tunnel.getPort(), url);
+
+            if (!url.equals(printedAddresses.get(tunnel.getPort()))) {
+                System.out.println(tunnel.getPort() + " " + url);
+                System.out.flush();
+            }
+        }
+
+        if (addresses.equals(printedAddresses)) return;
+        printedAddresses.clear();
+        printedAddresses.putAll(addresses);
+        writeOutputFile(tunnels);
+    }
+
+    /**
+     * Replaces the output file at once, so readers never see a partially written file
+     */
+    private void writeOutputFile(@NotNull List<Tunnel> tunnels) {
+        if (outputFile == null) return;
+
+        List<String> lines = new ArrayList<>();
+        for (Tunnel tunnel : tunnels) {
+            String address = printedAddresses.get(tunnel.getPort());
+            if (address != null) lines.add(tunnel.getPort() + " " + address);
+        }
+
+        Path absolutePath = outputFile.toAbsolutePath();
+        Path tempPath = absolutePath.resolveSibling(absolutePath.getFileName() + ".tmp");
+        try {
+            Files.write(tempPath, lines, StandardCharsets.UTF_8);
+            try {
+                Files.move(tempPath, absolutePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(tempPath, absolutePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to write the tunnel addresses to " + outputFile, exception);
+        }
+    }
+
+    /**
+     * Logs the download progress in steps of ten percent
+     */
+    private static class LoggingProgress implements ProgressListener {
+        private int lastStep = -1;
+
+        @Override
+        public void onProgress(long bytes, long total) {
+            if (total <= 0) return;
+            int step = (int) (bytes * 10 / total);
+            if (step == lastStep) return;
+
+            lastStep = step;
+            LOGGER.info("Downloading ngrok... " + step * 10 + "%");
+        }
+
+    }
+
+}
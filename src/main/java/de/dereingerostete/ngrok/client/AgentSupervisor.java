@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import de.dereingerostete.ngrok.metrics.Histogram;
+import de.dereingerostete.ngrok.util.Schedulers;
+import de.dereingerostete.ngrok.util.config.AutoRestart;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Restarts the Ngrok agent after it exited unexpectedly.
+ * The delay between restarts grows exponentially with random jitter until a tunnel is online again.
+ * Errors caused by the account or the auth token are fatal and never restarted.
+ */
+public class AgentSupervisor {
+    private final @NotNull Supplier<AutoRestart> config; // Read on every use, so reloaded settings apply
+    private final @NotNull Runnable restartAction;
+    private final @NotNull LongAdder restarts;
+    private final @Getter @NotNull Histogram recoveryTimes; // Milliseconds from the failure until a tunnel was online
+    private @Nullable ScheduledFuture<?> restartTask;
+    private int attempts; // Restarts since the last failure
+    private long failedAt; // System.nanoTime() of the first failure or 0 if the agent is healthy
+
+    public AgentSupervisor(@NotNull Supplier<AutoRestart> config, @NotNull Runnable restartAction) {
+        this.config = config;
+        this.restartAction = restartAction;
+        this.restarts = new LongAdder();
+        this.recoveryTimes = new Histogram();
+    }
+
+    /**
+     * Called once the agent exited without being stopped
+     *
+     * @param exitCode The exit code of the process
+     * @param errorCode The last Ngrok error code or 0 if there was none
+     */
+    public synchronized void handleUnexpectedExit(int exitCode, int errorCode) {
+        if (isFatal(errorCode)) {
+            LOGGER.warn("Ngrok agent exited with fatal error ERR_NGROK_" + errorCode + ". Not restarting");
+            reset();
+            return;
+        }
+
+        AutoRestart settings = config.get();
+        if (!settings.isEnabled()) return;
+        if (settings.getMaxRestarts() > 0 && attempts >= settings.getMaxRestarts()) {
+            LOGGER.warn("Ngrok agent could not be restarted after " + attempts + " attempts. Giving up");
+            reset();
+            return;
+        }
+
+        if (failedAt == 0) failedAt = System.nanoTime();
+        long delay = getDelay(attempts++);
+        LOGGER.warn("Ngrok agent exited with code " + exitCode + (errorCode == 0 ? "" : " (ERR_NGROK_" + errorCode + ")")
+                + ". Restarting in " + delay + "ms (attempt " + attempts + ")");
+
+        cancelTask();
+        restartTask = Schedulers.shared().schedule(this::restart, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called once a tunnel of the agent is online
+     */
+    public synchronized void handleOnline() {
+        if (failedAt == 0) return;
+
+        long recoveryTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - failedAt);
+        recoveryTimes.record(recoveryTime);
+        LOGGER.info("Ngrok agent recovered after " + recoveryTime + "ms (" + attempts + " restart attempt(s))");
+        reset();
+    }
+
+    /**
+     * Stops recovering, called if the agent is started or stopped on purpose
+     */
+    public synchronized void reset() {
+        cancelTask();
+        attempts = 0;
+        failedAt = 0;
+    }
+
+    /**
+     * @return true if the agent failed and did not recover yet
+     */
+    public synchronized boolean isRecovering() {
+        return failedAt != 0;
+    }
+
+    public long getRestartCount() {
+        return restarts.sum();
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed, the other half is random.
+     * This spreads out restarts while still guaranteeing a growing delay.
+     */
+    long getDelay(int attempt) {
+        AutoRestart settings = config.get();
+        long initialDelay = Math.max(1, settings.getInitialDelay());
+        long delay = initialDelay << Math.min(attempt, 30);
+        if (delay <= 0 || delay > settings.getMaxDelay()) delay = Math.max(initialDelay, settings.getMaxDelay());
+
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    static boolean isFatal(int errorCode) {
+        // 102 and 103: Banned account, 105: Invalid auth token
+        return errorCode == 102 || errorCode == 103 || errorCode == 105;
+    }
+
+    private void restart() {
+        synchronized (this) {
+            restartTask = null;
+            if (failedAt == 0) return; // Reset in the meantime
+        }
+
+        restarts.increment();
+        restartAction.run();
+    }
+
+    private void cancelTask() {
+        if (restartTask != null) {
+            restartTask.cancel(false);
+            restartTask = null;
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONObject;
+
+/**
+ * A tunnel as reported by the local API of the Ngrok agent
+ */
+@Value
+public class ApiTunnel {
+    @NotNull String name;
+    @Nullable String publicUrl;
+    @Nullable String protocol;
+    @Nullable String address;
+    @NotNull JSONObject metrics;
+
+    @NotNull
+    public static ApiTunnel fromJson(@NotNull JSONObject object) {
+        JSONObject config = object.optJSONObject("config");
+        JSONObject metrics = object.optJSONObject("metrics");
+        return new ApiTunnel(object.getString("name"),
+                object.optString("public_url", null),
+                object.optString("proto", null),
+                config == null ? null : config.optString("addr", null),
+                metrics == null ? new JSONObject() : metrics);
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue for lines between exactly one producer and one consumer.
+ * The consumer claims lines with a CAS on the head index, which also lets the
+ * producer discard the oldest line under {@link OverflowPolicy#DROP_OLDEST}.
+ * Waiting is done with {@link LockSupport#park}, so neither side spins.
+ */
+public class LineRingBuffer {
+    private final @NotNull AtomicReferenceArray<String> slots;
+    private final @NotNull OverflowPolicy policy;
+    private final int capacity;
+    private final int mask;
+
+    private final @NotNull AtomicLong head;  // Index of the next line to consume
+    private final @NotNull AtomicLong tail;  // Index of the next line to produce, only written by the producer
+    private final @NotNull AtomicLong linesRead;
+    private final @NotNull AtomicLong linesDropped;
+    private volatile long highWaterMark;
+
+    private volatile @Nullable Thread waitingProducer;
+    private volatile @Nullable Thread waitingConsumer;
+    private volatile boolean closed;
+
+    public LineRingBuffer(int capacity, @NotNull OverflowPolicy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        int size = 1;
+        while (size < capacity) size <<= 1; // Power of two, so indices can be masked
+
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.policy = policy;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.linesRead = new AtomicLong();
+        this.linesDropped = new AtomicLong();
+        this.highWaterMark = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Adds a line to the buffer. Must only be called by the producer thread.
+     *
+     * @return false if the buffer was closed and the line was not added
+     */
+    public boolean offer(@NotNull String line) throws InterruptedException {
+        if (closed) return false;
+        linesRead.incrementAndGet();
+
+        long currentTail = tail.get();
+        while (currentTail - head.get() >= capacity) {
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                long currentHead = head.get();
+                if (currentTail - currentHead >= capacity && head.compareAndSet(currentHead, currentHead + 1)) {
+                    linesDropped.incrementAndGet();
+                }
+                continue;
+            }
+
+            waitingProducer = Thread.currentThread();
+            if (currentTail - head.get() >= capacity && !closed) LockSupport.park(this);
+            waitingProducer = null;
+
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (closed) return false;
+        }
+
+        slots.set((int) (currentTail & mask), line);
+        tail.set(currentTail + 1); // Publishes the slot to the consumer
+
+        long size = currentTail + 1 - head.get();
+        if (size > highWaterMark) highWaterMark = size;
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+        return true;
+    }
+
+    /**
+     * Moves up to {@code maxLines} lines into the target list. Must only be called by the consumer thread.
+     *
+     * @return the amount of lines that were moved
+     */
+    public int drainTo(@NotNull List<String> target, int maxLines) {
+        int count = 0;
+        while (count < maxLines) {
+            long currentHead = head.get();
+            if (currentHead >= tail.get()) break;
+
+            String line = slots.get((int) (currentHead & mask));
+            if (!head.compareAndSet(currentHead, currentHead + 1)) continue; // Dropped by the producer
+
+            target.add(line);
+            count++;
+        }
+
+        Thread producer = waitingProducer;
+        if (count > 0 && producer != null) LockSupport.unpark(producer);
+        return count;
+    }
+
+    /**
+     * Waits until at least one line is available. Must only be called by the consumer thread.
+     *
+     * @return false if the buffer was closed and every line was consumed
+     */
+    public boolean awaitLines() throws InterruptedException {
+        while (isEmpty()) {
+            if (closed) return !isEmpty();
+
+            waitingConsumer = Thread.currentThread();
+            if (isEmpty() && !closed) LockSupport.park(this);
+            waitingConsumer = null;
+
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting new lines. Lines that are already queued can still be drained.
+     */
+    public void close() {
+        closed = true;
+
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getLinesRead() {
+        return linesRead.get();
+    }
+
+    public long getLinesDropped() {
+        return linesDropped.get();
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+}
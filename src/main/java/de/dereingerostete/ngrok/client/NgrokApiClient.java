@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client for the local web API of a running Ngrok agent (the "web_addr" of the Ngrok config).
+ * All requests share one keep-alive connection and the tunnel listing is cached for a short time.
+ */
+public class NgrokApiClient {
+    private static final long CACHE_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final @NotNull Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    private final @NotNull HttpClient httpClient;
+    private final @Getter @NotNull String webAddress;
+    private final @NotNull URI baseUri;
+    private volatile @Nullable List<ApiTunnel> cachedTunnels;
+    private volatile long cacheTime;
+
+    public NgrokApiClient(@NotNull String webAddress) {
+        this.webAddress = webAddress;
+        this.baseUri = URI.create("http://" + webAddress + "/api/");
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+    }
+
+    /**
+     * @return the tunnels of the agent, at most one second old
+     */
+    @NotNull
+    public List<ApiTunnel> listTunnels() throws IOException {
+        List<ApiTunnel> tunnels = cachedTunnels;
+        if (tunnels != null && System.nanoTime() - cacheTime < CACHE_TTL_NANOS) return tunnels;
+
+        HttpRequest request = createRequest("tunnels").GET().build();
+        JSONObject response = send(request, 200);
+
+        try {
+            JSONArray array = response.getJSONArray("tunnels");
+            List<ApiTunnel> result = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                result.add(ApiTunnel.fromJson(array.getJSONObject(i)));
+            }
+
+            tunnels = Collections.unmodifiableList(result);
+            cachedTunnels = tunnels;
+            cacheTime = System.nanoTime();
+            return tunnels;
+        } catch (JSONException exception) {
+            throw new IOException("Invalid tunnel list from Ngrok API", exception);
+        }
+    }
+
+    /**
+     * Starts a new TCP tunnel on the running agent
+     */
+    @NotNull
+    public ApiTunnel startTunnel(@NotNull String name, @NotNull Map<String, Object> tunnelConfig) throws IOException {
+        JSONObject body = new JSONObject(tunnelConfig);
+        body.put("name", name);
+
+        HttpRequest request = createRequest("tunnels")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8))
+                .build();
+
+        invalidate();
+        try {
+            return ApiTunnel.fromJson(send(request, 201));
+        } catch (JSONException exception) {
+            throw new IOException("Invalid tunnel from Ngrok API", exception);
+        }
+    }
+
+    public void stopTunnel(@NotNull String name) throws IOException {
+        String encodedName = URLEncoder.encode(name, StandardCharsets.UTF_8);
+        HttpRequest request = createRequest("tunnels/" + encodedName).DELETE().build();
+
+        invalidate();
+        send(request, 204);
+    }
+
+    public void invalidate() {
+        cachedTunnels = null;
+    }
+
+    @NotNull
+    private HttpRequest.Builder createRequest(@NotNull String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json");
+    }
+
+    @NotNull
+    private JSONObject send(@NotNull HttpRequest request, int expectedStatus) throws IOException {
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            int status = response.statusCode();
+            if (status != expectedStatus) {
+                throw new IOException("Ngrok API returned status " + status + ": " + response.body());
+            }
+
+            String body = response.body();
+            return body.isBlank() ? new JSONObject() : new JSONObject(body);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ngrok API request was interrupted", exception);
+        } catch (JSONException exception) {
+            throw new IOException("Ngrok API returned invalid JSON", exception);
+        }
+    }
+
+}
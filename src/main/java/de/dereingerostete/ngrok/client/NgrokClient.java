@@ -10,22 +10,32 @@
 package de.dereingerostete.ngrok.client;
 
 import de.dereingerostete.ngrok.Bootstrap;
+import de.dereingerostete.ngrok.jfr.DownloadEvent;
+import de.dereingerostete.ngrok.util.config.ConfigUtils;
 import de.dereingerostete.ngrok.util.config.Configuration;
 import de.dereingerostete.ngrok.util.config.ReadOnlyConfig;
-import de.dereingerostete.ngrok.util.GUIUtils;
+import de.dereingerostete.ngrok.util.ProgressListener;
+import de.dereingerostete.ngrok.util.ResumableDownloadStream;
 import de.dereingerostete.ngrok.util.UpdateInfo;
+import lombok.Getter;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
 
@@ -33,36 +43,47 @@ public class NgrokClient {
     private final @NotNull Configuration configuration;
     private final @NotNull ReadOnlyConfig readOnlyConfig;
     private final @NotNull File executableFile;
-    private final @NotNull File ngrokConfigFile;
+    private final @Getter @NotNull File ngrokConfigFile;
+    private final @Getter @NotNull TunnelManager tunnelManager;
+    private final @Getter @NotNull Notifier notifier;
+    private volatile @Nullable CompletableFuture<Boolean> updateFuture;
 
-    public NgrokClient() throws IOException {
+    public NgrokClient(@NotNull Notifier notifier) throws IOException {
+        this.notifier = notifier;
         this.configuration = Bootstrap.getConfiguration();
         this.readOnlyConfig = Bootstrap.getReadOnlyConfig();
         this.executableFile = new File(Bootstrap.DATA_FOLDER, readOnlyConfig.getExecutable());
         this.ngrokConfigFile = loadNgrokConfig();
+        this.tunnelManager = new TunnelManager(this);
     }
 
-    @Nullable
-    public NgrokProcessThread createTunnel(int port, @NotNull Runnable onExit) throws IOException {
+    public boolean hasAuthToken() {
         String authToken = configuration.getAuthToken();
-        if (authToken == null || authToken.equals("YOUR_TOKEN_HERE")) return null;
+        return authToken != null && !authToken.equals("YOUR_TOKEN_HERE");
+    }
 
-        List<String> arguments = createCommandArguments(port);
+    /**
+     * Starts a Ngrok agent running the given tunnels of the Ngrok config file
+     */
+    @NotNull
+    public NgrokProcessThread createAgent(@NotNull List<String> tunnelNames,
+                                          @NotNull Consumer<NgrokProcessThread> onExit) throws IOException {
+        List<String> arguments = createCommandArguments(tunnelNames);
         Process process = new ProcessBuilder(arguments)
                 .directory(Bootstrap.DATA_FOLDER)
                 .start();
 
-        NgrokProcessThread thread = new NgrokProcessThread(process, onExit);
+        NgrokProcessThread thread = new NgrokProcessThread(process, readOnlyConfig.getOutputBuffer(), onExit);
         thread.start();
         return thread;
     }
 
     @NotNull
-    protected List<String> createCommandArguments(int port) throws IOException {
+    protected List<String> createCommandArguments(@NotNull List<String> tunnelNames) throws IOException {
         String filePath = executableFile.getCanonicalPath();
         List<String> commands = new ArrayList<>();
         commands.add(filePath);
-        commands.add("tcp");
+        commands.add("start");
 
         String region = readOnlyConfig.getRegion();
         if (region != null) {
@@ -88,7 +109,7 @@ public class NgrokClient {
             commands.add(value);
         });
 
-        commands.add(String.valueOf(port));
+        commands.addAll(tunnelNames);
         return commands;
     }
 
@@ -96,23 +117,102 @@ public class NgrokClient {
         return executableFile.exists();
     }
 
-    public void download() throws IOException {
+    /**
+     * Downloads the Ngrok zip and inflates the executable while downloading.
+     * The executable is written next to its final location and then moved into place.
+     */
+    public void download(@Nullable ProgressListener listener) throws IOException {
         String downloadPath = readOnlyConfig.getDownloadPath();
         URL url = new URL(downloadPath);
-        File tempFile = File.createTempFile("ngrok-mc-gui", ".tmp");
-        FileUtils.copyURLToFile(url, tempFile, 10_000, 300_000);
 
-        ZipFile zipFile = new ZipFile(tempFile);
-        ZipEntry entry = zipFile.entries().nextElement();
-        InputStream inputStream = zipFile.getInputStream(entry);
-        FileUtils.copyInputStreamToFile(inputStream, executableFile);
+        DownloadEvent event = new DownloadEvent();
+        event.url = downloadPath;
+        event.begin();
+
+        Path targetPath = executableFile.toPath();
+        Path tempPath = targetPath.resolveSibling(executableFile.getName() + ".part");
+        try (ResumableDownloadStream downloadStream = new ResumableDownloadStream(url, listener);
+             ZipInputStream zipStream = new ZipInputStream(downloadStream)) {
+            ZipEntry entry = zipStream.getNextEntry();
+            if (entry == null) throw new IOException("Downloaded Ngrok zip file is empty");
+            Files.copy(zipStream, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            event.bytes = downloadStream.getPosition();
+        } catch (IOException exception) {
+            Files.deleteIfExists(tempPath);
+            throw exception;
+        }
+
+        try {
+            Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (!executableFile.canExecute() && !executableFile.setExecutable(true)) {
+            LOGGER.warn("Failed to make the Ngrok executable runnable");
+        }
+        event.commit();
+    }
+
+    /**
+     * Checks for Ngrok updates in the background, unless the last check is younger than the configured interval.
+     * An update replaces the executable and is used the next time the agent is started.
+     *
+     * @return a future completing with true if Ngrok was updated
+     */
+    @NotNull
+    public synchronized CompletableFuture<Boolean> checkForUpdates() throws IOException {
+        CompletableFuture<Boolean> currentFuture = updateFuture;
+        if (currentFuture != null && !currentFuture.isDone()) return currentFuture;
+
+        long interval = TimeUnit.HOURS.toMillis(readOnlyConfig.getUpdateCheckInterval());
+        long elapsed = System.currentTimeMillis() - configuration.getLastUpdateCheck();
+        if (elapsed >= 0 && elapsed < interval) {
+            LOGGER.info("Skipping Ngrok update check, last check was " + TimeUnit.MILLISECONDS.toMinutes(elapsed) + " minutes ago");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        LOGGER.info("Checking for Ngrok updates");
+        UpdateInfo info = update();
+        CompletableFuture<Boolean> future = info.getCompletionFuture()
+                .orTimeout(5, TimeUnit.MINUTES)
+                .thenApply(process -> info.getUpdatingFuture().getNow(false));
 
-        // Finish download
-        inputStream.close();
-        zipFile.close();
-        FileUtils.deleteQuietly(tempFile);
+        future.whenComplete((updated, throwable) -> {
+            if (throwable != null) {
+                LOGGER.warn("Failed to check for Ngrok updates", throwable);
+                return;
+            }
+
+            if (updated) LOGGER.info("Ngrok was updated. The new version is used for the next tunnel start");
+            else LOGGER.info("Ngrok is up to date");
+            markUpdateChecked();
+        });
 
+        this.updateFuture = future;
+        return future;
+    }
+
+    /**
+     * Returns a future completing once a running update finished, failed or took longer than two minutes,
+     * so a new agent is never started while the executable is replaced
+     */
+    @NotNull
+    public CompletableFuture<Void> whenUpdateFinished() {
+        CompletableFuture<Boolean> future = updateFuture;
+        if (future == null || future.isDone()) return CompletableFuture.completedFuture(null);
+
+        LOGGER.info("Waiting for the Ngrok update to finish");
+        return future.handle((updated, throwable) -> (Void) null)
+                .completeOnTimeout(null, 2, TimeUnit.MINUTES);
+    }
 
+    /**
+     * Stores the current time as the last update check
+     */
+    public void markUpdateChecked() {
+        configuration.setLastUpdateCheck(System.currentTimeMillis());
+        Bootstrap.getConfigStore().save();
     }
 
     @NotNull
@@ -156,7 +256,7 @@ public class NgrokClient {
     private File loadNgrokConfig() throws IOException {
         File ngrokConfig = new File(Bootstrap.DATA_FOLDER, "ngrok-config.yml");
         if (!ngrokConfig.exists()) {
-            URL url = GUIUtils.getResourceAsURL(ngrokConfig.getName());
+            URL url = ConfigUtils.getResourceAsURL(ngrokConfig.getName());
             FileUtils.copyURLToFile(url, ngrokConfig);
         }
         return ngrokConfig;
@@ -10,13 +10,8 @@
 package de.dereingerostete.ngrok.client;
 
 import de.dereingerostete.ngrok.Bootstrap;
-import de.dereingerostete.ngrok.gui.panel.ActivePanel;
-import de.dereingerostete.ngrok.gui.panel.MainPanel;
-import de.dereingerostete.ngrok.util.GUIUtils;
+import de.dereingerostete.ngrok.jfr.NgrokMessageEvent;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.util.OptionalInt;
 
@@ -25,41 +20,73 @@ import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
 public class NgrokHandler {
 
     public static void handle(@NotNull String message, @NotNull NgrokProcessThread thread) {
-        JSONObject messageObject = parseJsonMessage(message);
-        if (messageObject == null) return;
+        if (message.isBlank()) return;
 
-        String level = messageObject.optString("lvl", null);
-        if (level == null) {
-            LOGGER.warn("Ngrok JSON message did not contain a log level");
-            return;
-        }
+        NgrokMessageEvent messageEvent = new NgrokMessageEvent();
+        messageEvent.begin();
+
+        NgrokLogEvent event = thread.getLogEvent();
+        String type = dispatch(message, event, thread);
 
-        if (level.equals("eror")) handleError(messageObject, thread);
-        else if (level.equals("info")) handleInfo(messageObject);
-        else LOGGER.warn("Ngrok JSON message contain unknown log level: " + message);
+        if (messageEvent.shouldCommit()) {
+            messageEvent.level = event.getLevel();
+            messageEvent.type = type;
+            messageEvent.commit();
+        }
     }
 
-    public static void handleInfo(@NotNull JSONObject messageObject) {
-        if (messageObject.has("url")) handleURL(messageObject);
-        else LOGGER.info("Unknown Ngrok info message: " + messageObject);
+    /**
+     * @return the type of the message for the flight recorder
+     */
+    @NotNull
+    private static String dispatch(@NotNull String message, @NotNull NgrokLogEvent event,
+                                   @NotNull NgrokProcessThread thread) {
+        if (!NgrokLogDecoder.decode(message, event)) {
+            LOGGER.warn("Failed to parse Ngrok message: " + message);
+            return "invalid";
+        }
+
+        if (!event.has(NgrokLogEvent.LEVEL)) {
+            LOGGER.warn("Ngrok message did not contain a log level");
+            return "invalid";
+        }
+
+        if (event.isLevel("eror")) {
+            handleError(event, thread);
+            return "error";
+        } else if (event.isLevel("info")) {
+            handleInfo(event);
+            return event.has(NgrokLogEvent.URL) ? "url" : "info";
+        } else if (event.isLevel("warn")) {
+            LOGGER.warn("Ngrok warning: " + event.getMessage());
+            return "warning";
+        } else if (event.isLevel("dbug")) {
+            return "debug";
+        } else {
+            LOGGER.warn("Ngrok message contain unknown log level: " + message);
+            return "unknown";
+        }
     }
 
-    public static void handleURL(@NotNull JSONObject messageObject) {
-        String url = messageObject.getString("url");
-        if (url.startsWith("tcp://")) url = url.substring(6);
+    public static void handleInfo(@NotNull NgrokLogEvent event) {
+        if (event.has(NgrokLogEvent.URL)) handleURL(event);
+        else LOGGER.info("Unknown Ngrok info message: " + event);
+    }
 
-        ActivePanel activePanel = Bootstrap.getGui().getActivePanel();
-        if (!(activePanel instanceof MainPanel)) return;
+    public static void handleURL(@NotNull NgrokLogEvent event) {
+        String url = event.getUrl();
+        if (url == null) return;
 
-        MainPanel mainPanel = (MainPanel) activePanel;
-        mainPanel.setIpText(url);
+        TunnelManager manager = Bootstrap.getClient().getTunnelManager();
+        manager.handleTunnelStarted(event.getName(), event.getAddress(), url);
     }
 
-    public static void handleError(@NotNull JSONObject messageObject, @NotNull NgrokProcessThread thread) {
-        OptionalInt optionalError = getErrorCode(messageObject);
+    public static void handleError(@NotNull NgrokLogEvent event, @NotNull NgrokProcessThread thread) {
+        OptionalInt optionalError = getErrorCode(event);
         if (optionalError.isEmpty()) return;
 
         int errorCode = optionalError.getAsInt();
+        thread.setErrorCode(errorCode);
         switch (errorCode) {
             case 102:
             case 103:
@@ -72,7 +99,7 @@ public class NgrokHandler {
                 handleSessionLimit(thread);
                 break;
             default:
-                handleUnknownError(messageObject, errorCode);
+                handleUnknownError(event, errorCode);
                 break;
         }
     }
@@ -80,7 +107,9 @@ public class NgrokHandler {
     private static void handleSessionLimit(@NotNull NgrokProcessThread thread) {
         LOGGER.warn("Ngrok account has a session already running");
         thread.close();
-        GUIUtils.showWarning(null, "Ngrok already running",
+        if (isRecovering()) return; // Already warned, the agent is restarted until the session is free
+
+        showWarning("Ngrok already running",
                 "Your Ngrok account reached the max. amount of simultaneous sessions.\n" +
                         "Please close a sessions or try again later.");
     }
@@ -88,31 +117,41 @@ public class NgrokHandler {
     private static void handleBannedAccount(@NotNull NgrokProcessThread thread, int errorCode) {
         LOGGER.warn("Ngrok account seems to be banned. Stopping process");
         thread.close();
-        GUIUtils.showWarning(null, "Banned Ngrok token",
+        showWarning("Banned Ngrok token",
                 "It seems like you entered an auth token of an account that has\n" +
                         "been banned. Please check your Ngrok account or try again.\n" +
                         "Error: ERR_NGROK_" + errorCode);
     }
 
-    private static void handleUnknownError(@NotNull JSONObject messageObject, int code) {
+    private static void handleUnknownError(@NotNull NgrokLogEvent event, int code) {
         LOGGER.warn("Received unknown error: " + code);
+        if (isRecovering()) return;
 
-        String error = messageObject.optString("err", "Unknown");
-        GUIUtils.showWarning(null, "Unknown Ngrok error",
+        String error = event.getError();
+        if (error == null) error = "Unknown";
+        showWarning("Unknown Ngrok error",
                 "Ngrok encountered an unexpected error:\n" + error);
     }
 
     private static void handleInvalidToken(@NotNull NgrokProcessThread thread) {
         LOGGER.warn("Invalid Ngrok auth token. Stopping process");
         thread.close();
-        GUIUtils.showWarning(null, "Invalid Ngrok token",
+        showWarning("Invalid Ngrok token",
                 "It seems like you entered an invalid auth token.\n" +
                         "Please update the auth token in the config.yml file.");
     }
 
+    private static void showWarning(@NotNull String title, @NotNull String message) {
+        Bootstrap.getClient().getNotifier().showWarning(title, message);
+    }
+
+    private static boolean isRecovering() {
+        return Bootstrap.getClient().getTunnelManager().getSupervisor().isRecovering();
+    }
+
     @NotNull
-    private static OptionalInt getErrorCode(@NotNull JSONObject message) {
-        String error = message.optString("err", null);
+    private static OptionalInt getErrorCode(@NotNull NgrokLogEvent message) {
+        String error = message.getError();
         if (error == null) {
             LOGGER.warn("Ngrok error seems to not be a error: " + message);
             return OptionalInt.empty();
@@ -137,20 +176,4 @@ public class NgrokHandler {
             return OptionalInt.empty();
         }
     }
-
-    @Nullable
-    private static JSONObject parseJsonMessage(@NotNull String error) {
-        try {
-            if (error.isBlank()) return null;
-            if (error.charAt(0) != '{') {
-                LOGGER.warn("Ngrok message is not JSON: " + error);
-                return null;
-            }
-
-            return new JSONObject(error);
-        } catch (JSONException exception) {
-            LOGGER.warn("Failed to parse Ngrok JSON message", exception);
-            return null;
-        }
-    }
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Streaming decoder for Ngrok log lines in the "json" and "logfmt" log formats.
+ * Only the fields used by {@link NgrokHandler} are extracted, every other field is skipped
+ * without creating objects. Unescaped values are kept as offsets into the line.
+ */
+public class NgrokLogDecoder {
+
+    /**
+     * Decodes a log line into the given event
+     *
+     * @return false if the line is blank or malformed
+     */
+    public static boolean decode(@NotNull String line, @NotNull NgrokLogEvent event) {
+        event.reset(line);
+
+        int index = skipWhitespace(line, 0);
+        if (index == line.length()) return false;
+        return line.charAt(index) == '{' ? decodeJson(line, index + 1, event) : decodeLogfmt(line, index, event);
+    }
+
+    private static boolean decodeJson(@NotNull String line, int index, @NotNull NgrokLogEvent event) {
+        int length = line.length();
+        while (true) {
+            index = skipWhitespace(line, index);
+            if (index == length) return false;
+            if (line.charAt(index) == '}') return true;
+            if (line.charAt(index) != '"') return false;
+
+            int keyStart = index + 1;
+            int keyEnd = findStringEnd(line, keyStart);
+            if (keyEnd == -1) return false;
+
+            index = skipWhitespace(line, keyEnd + 1);
+            if (index == length || line.charAt(index) != ':') return false;
+            index = skipWhitespace(line, index + 1);
+            if (index == length) return false;
+
+            int field = getField(line, keyStart, keyEnd);
+            char first = line.charAt(index);
+            if (first == '"') {
+                int valueStart = index + 1;
+                int valueEnd = findStringEnd(line, valueStart);
+                if (valueEnd == -1) return false;
+
+                if (field != -1) setValue(line, valueStart, valueEnd, field, event);
+                index = valueEnd + 1;
+            } else {
+                int valueEnd = first == '{' || first == '[' ? skipNested(line, index) : skipLiteral(line, index);
+                if (valueEnd == -1) return false;
+
+                if (field != -1) event.setRange(field, index, valueEnd);
+                index = valueEnd;
+            }
+
+            index = skipWhitespace(line, index);
+            if (index == length) return false;
+
+            char separator = line.charAt(index);
+            if (separator == '}') return true;
+            if (separator != ',') return false;
+            index++;
+        }
+    }
+
+    private static boolean decodeLogfmt(@NotNull String line, int index, @NotNull NgrokLogEvent event) {
+        int length = line.length();
+        boolean found = false;
+
+        while (index < length) {
+            int keyStart = index;
+            while (index < length && line.charAt(index) != '=' && line.charAt(index) > ' ') index++;
+            int keyEnd = index;
+
+            if (index < length && line.charAt(index) == '=') {
+                int field = getField(line, keyStart, keyEnd);
+                index++;
+
+                if (index < length && line.charAt(index) == '"') {
+                    int valueStart = index + 1;
+                    int valueEnd = findStringEnd(line, valueStart);
+                    if (valueEnd == -1) return false;
+
+                    if (field != -1) setValue(line, valueStart, valueEnd, field, event);
+                    index = valueEnd + 1;
+                } else {
+                    int valueStart = index;
+                    while (index < length && line.charAt(index) > ' ') index++;
+                    if (field != -1) event.setRange(field, valueStart, index);
+                }
+                found = true;
+            }
+
+            index = skipWhitespace(line, index);
+        }
+        return found;
+    }
+
+    private static int getField(@NotNull String line, int start, int end) {
+        int length = end - start;
+        if (length == 3) {
+            if (line.regionMatches(start, "lvl", 0, 3)) return NgrokLogEvent.LEVEL;
+            if (line.regionMatches(start, "msg", 0, 3)) return NgrokLogEvent.MESSAGE;
+            if (line.regionMatches(start, "url", 0, 3)) return NgrokLogEvent.URL;
+            if (line.regionMatches(start, "err", 0, 3)) return NgrokLogEvent.ERROR;
+            if (line.regionMatches(start, "obj", 0, 3)) return NgrokLogEvent.OBJECT;
+        } else if (length == 4) {
+            if (line.regionMatches(start, "addr", 0, 4)) return NgrokLogEvent.ADDRESS;
+            if (line.regionMatches(start, "name", 0, 4)) return NgrokLogEvent.NAME;
+        }
+        return -1;
+    }
+
+    private static void setValue(@NotNull String line, int start, int end, int field, @NotNull NgrokLogEvent event) {
+        int escapeIndex = line.indexOf('\\', start);
+        if (escapeIndex == -1 || escapeIndex >= end) {
+            event.setRange(field, start, end);
+        } else {
+            event.setValue(field, unescape(line, start, end));
+        }
+    }
+
+    /**
+     * @return the index of the closing quote or -1 if the string is not terminated
+     */
+    private static int findStringEnd(@NotNull String line, int index) {
+        int length = line.length();
+        while (index < length) {
+            char character = line.charAt(index);
+            if (character == '"') return index;
+            index += character == '\\' ? 2 : 1;
+        }
+        return -1;
+    }
+
+    private static int skipNested(@NotNull String line, int index) {
+        int length = line.length();
+        int depth = 0;
+        while (index < length) {
+            char character = line.charAt(index);
+            if (character == '"') {
+                index = findStringEnd(line, index + 1);
+                if (index == -1) return -1;
+            } else if (character == '{' || character == '[') {
+                depth++;
+            } else if (character == '}' || character == ']') {
+                if (--depth == 0) return index + 1;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    private static int skipLiteral(@NotNull String line, int index) {
+        int length = line.length();
+        while (index < length) {
+            char character = line.charAt(index);
+            if (character == ',' || character == '}' || character <= ' ') return index;
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipWhitespace(@NotNull String line, int index) {
+        int length = line.length();
+        while (index < length && line.charAt(index) <= ' ') index++;
+        return index;
+    }
+
+    @NotNull
+    private static String unescape(@NotNull String line, int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int index = start; index < end; index++) {
+            char character = line.charAt(index);
+            if (character != '\\' || index + 1 >= end) {
+                builder.append(character);
+                continue;
+            }
+
+            char escaped = line.charAt(++index);
+            switch (escaped) {
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'u':
+                    if (index + 4 < end) {
+                        try {
+                            builder.append((char) Integer.parseInt(line.substring(index + 1, index + 5), 16));
+                            index += 4;
+                            break;
+                        } catch (NumberFormatException ignored) {}
+                    }
+                    builder.append('\\').append(escaped);
+                    break;
+                default: // Quotes, slashes and backslashes
+                    builder.append(escaped);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Reusable view of the fields of a single Ngrok log line.
+ * Values are stored as offsets into the line and only turned into strings when requested.
+ * Instances are filled by {@link NgrokLogDecoder} and are not thread safe.
+ */
+public class NgrokLogEvent {
+    static final int LEVEL = 0;
+    static final int MESSAGE = 1;
+    static final int URL = 2;
+    static final int ERROR = 3;
+    static final int OBJECT = 4;
+    static final int ADDRESS = 5;
+    static final int NAME = 6;
+    static final int FIELD_COUNT = 7;
+
+    private final int @NotNull [] starts;
+    private final int @NotNull [] ends;
+    private final @Nullable String @NotNull [] values;
+    private @NotNull String line;
+
+    public NgrokLogEvent() {
+        this.starts = new int[FIELD_COUNT];
+        this.ends = new int[FIELD_COUNT];
+        this.values = new String[FIELD_COUNT];
+        reset("");
+    }
+
+    void reset(@NotNull String line) {
+        this.line = line;
+        Arrays.fill(starts, -1);
+        Arrays.fill(values, null);
+    }
+
+    void setRange(int field, int start, int end) {
+        starts[field] = start;
+        ends[field] = end;
+        values[field] = null;
+    }
+
+    void setValue(int field, @NotNull String value) {
+        starts[field] = 0;
+        ends[field] = 0;
+        values[field] = value;
+    }
+
+    @Nullable
+    private String get(int field) {
+        String value = values[field];
+        if (value != null || starts[field] == -1) return value;
+
+        value = line.substring(starts[field], ends[field]);
+        values[field] = value;
+        return value;
+    }
+
+    public boolean has(int field) {
+        return starts[field] != -1;
+    }
+
+    /**
+     * Compares the log level without creating a string
+     */
+    public boolean isLevel(@NotNull String level) {
+        String value = values[LEVEL];
+        if (value != null) return value.equals(level);
+
+        int start = starts[LEVEL];
+        if (start == -1) return false;
+        return ends[LEVEL] - start == level.length() && line.regionMatches(start, level, 0, level.length());
+    }
+
+    @Nullable
+    public String getLevel() {
+        return get(LEVEL);
+    }
+
+    @Nullable
+    public String getMessage() {
+        return get(MESSAGE);
+    }
+
+    @Nullable
+    public String getUrl() {
+        return get(URL);
+    }
+
+    @Nullable
+    public String getError() {
+        return get(ERROR);
+    }
+
+    @Nullable
+    public String getObject() {
+        return get(OBJECT);
+    }
+
+    @Nullable
+    public String getAddress() {
+        return get(ADDRESS);
+    }
+
+    @Nullable
+    public String getName() {
+        return get(NAME);
+    }
+
+    @NotNull
+    public String getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+
+}
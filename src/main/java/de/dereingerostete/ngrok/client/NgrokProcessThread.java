@@ -9,63 +9,139 @@
 
 package de.dereingerostete.ngrok.client;
 
+import de.dereingerostete.ngrok.jfr.NgrokProcessEvent;
+import de.dereingerostete.ngrok.util.config.OutputBuffer;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
 
+/**
+ * Drains the output of a Ngrok process.
+ * Both pipes are read with blocking reads, so while Ngrok is idle the
+ * stdout thread and the stderr thread are parked in the kernel and an
+ * open tunnel costs no measurable CPU time (target: below 1% of a core).
+ * The thread ends as soon as stdout reaches EOF, which happens when the process exits.
+ * <p>
+ * Read lines are queued in a {@link LineRingBuffer} and handled in batches on a separate
+ * handler thread, so a slow handler (e.g. a modal dialog) never stalls reading the pipe.
+ */
 public class NgrokProcessThread extends Thread {
+    private static final long DESTROY_TIMEOUT_SECONDS = 10;
     private final @NotNull Process process;
     private final @NotNull BufferedReader inputReader;
     private final @NotNull BufferedReader errorReader;
-    private final @NotNull Runnable onExitRunnable;
-    private boolean exiting;
-    private boolean stopped;
-
-    public NgrokProcessThread(@NotNull Process process, @NotNull Runnable onExit) {
+    private final @NotNull Thread errorThread;
+    private final @NotNull Thread handlerThread;
+    private final @NotNull LineRingBuffer buffer;
+    private final int batchSize;
+    private final @NotNull Consumer<NgrokProcessThread> onExitConsumer;
+    private final @NotNull NgrokLogEvent logEvent;
+    private final @NotNull NgrokProcessEvent processEvent;
+    private volatile boolean exiting;
+    private volatile boolean stopped;
+    private volatile int exitCode;
+    private volatile int errorCode;
+
+    public NgrokProcessThread(@NotNull Process process, @NotNull OutputBuffer bufferConfig,
+                              @NotNull Consumer<NgrokProcessThread> onExit) {
         this.process = process;
-        this.onExitRunnable = onExit;
+        this.onExitConsumer = onExit;
+
+        OverflowPolicy policy = OverflowPolicy.valueOf(bufferConfig.getOverflowPolicy().toUpperCase());
+        this.buffer = new LineRingBuffer(bufferConfig.getCapacity(), policy);
+        this.batchSize = Math.max(1, bufferConfig.getBatchSize());
+        this.logEvent = new NgrokLogEvent();
+        this.processEvent = new NgrokProcessEvent();
+        processEvent.begin();
+        processEvent.pid = process.pid();
+        processEvent.command = process.info().command().orElse("ngrok"); // Without arguments, they contain the token
         setName("NgrokProcessThread-" + getId());
-        setPriority(8);
         setDaemon(true);
 
-        BufferedInputStream inputStream = new BufferedInputStream(process.getInputStream());
-        BufferedInputStream errorStream = new BufferedInputStream(process.getErrorStream());
-        this.inputReader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-        this.errorReader = new BufferedReader(new InputStreamReader(errorStream, StandardCharsets.UTF_8));
+        this.inputReader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        this.errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8));
+        this.errorThread = new Thread(this::readErrors, "NgrokErrorThread-" + getId());
+        errorThread.setDaemon(true);
+        this.handlerThread = new Thread(this::handleMessages, "NgrokHandlerThread-" + getId());
+        handlerThread.setDaemon(true);
         this.exiting = false;
         this.stopped = false;
+        this.exitCode = -1;
+        this.errorCode = 0;
     }
 
     @Override
     public void run() {
-        while (!exiting) {
-            try {
-                if (errorReader.ready()) {
-                    String errorMessage = errorReader.readLine();
-                    LOGGER.info("Ngrok Error: " + errorMessage);
-                }
+        errorThread.start();
+        handlerThread.start();
+
+        try {
+            String message;
+            while ((message = inputReader.readLine()) != null) {
+                if (!buffer.offer(message)) break;
+            }
+        } catch (IOException exception) {
+            if (!exiting) LOGGER.warn("Failed to read from Ngrok process", exception);
+        } catch (InterruptedException exception) {
+            LOGGER.warn("Interrupted while queueing Ngrok message", exception);
+        }
+
+        buffer.close();
+        try {
+            handlerThread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
 
-                if (inputReader.ready()) {
-                    String message = inputReader.readLine();
+        LOGGER.info("Ngrok output: " + buffer.getLinesRead() + " lines read, " + buffer.getLinesDropped() +
+                " dropped, max. " + buffer.getHighWaterMark() + " of " + buffer.getCapacity() + " queued");
+        handleExit();
+        onExitConsumer.accept(this);
+    }
+
+    private void handleMessages() {
+        List<String> batch = new ArrayList<>(batchSize);
+        try {
+            while (buffer.awaitLines()) {
+                batch.clear();
+                buffer.drainTo(batch, batchSize);
+
+                for (String message : batch) {
                     LOGGER.info("Ngrok process send message: " + message);
-                    NgrokHandler.handle(message, this);
+                    try {
+                        NgrokHandler.handle(message, this);
+                    } catch (RuntimeException exception) {
+                        // A broken line must not stop the handling of all following ones
+                        LOGGER.warn("Failed to handle Ngrok message: " + message, exception);
+                    }
                 }
-            } catch (IOException exception) {
-                LOGGER.warn("Failed to read from Ngrok process", exception);
             }
+        } catch (InterruptedException exception) {
+            LOGGER.warn("Ngrok message handler was interrupted", exception);
         }
+    }
 
-        handleExit();
-        onExitRunnable.run();
+    private void readErrors() {
+        try {
+            String errorMessage;
+            while ((errorMessage = errorReader.readLine()) != null) {
+                LOGGER.info("Ngrok Error: " + errorMessage);
+            }
+        } catch (IOException exception) {
+            if (!exiting) LOGGER.warn("Failed to read errors from Ngrok process", exception);
+        }
     }
 
     protected void handleExit() {
@@ -74,15 +150,24 @@ public class NgrokProcessThread extends Thread {
             Process finishedProcess = process.onExit().get(1, TimeUnit.MINUTES);
 
             int exitValue = finishedProcess.exitValue();
+            processEvent.exitCode = exitValue;
+            this.exitCode = exitValue;
             LOGGER.info("Ngrok process exited with code " + exitValue);
         } catch (InterruptedException | TimeoutException exception) {
             LOGGER.warn("Ngrok process exit timed out", exception);
             LOGGER.warn("Exiting Ngrok forcibly (This should normally not happen!)");
             process.destroyForcibly();
+            processEvent.exitCode = -1;
         } catch (ExecutionException exception) {
             LOGGER.warn("Ngrok process exit failed with error", exception);
         }
 
+        try {
+            errorThread.join(TimeUnit.SECONDS.toMillis(DESTROY_TIMEOUT_SECONDS));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
         try {
             inputReader.close();
             errorReader.close();
@@ -90,16 +175,74 @@ public class NgrokProcessThread extends Thread {
             LOGGER.warn("Failed to close Ngrok process input streams", exception);
         }
 
+        processEvent.commit();
         this.stopped = true;
     }
 
     public void close() {
-        process.destroy();
+        if (exiting) return;
         exiting = true;
+        process.destroy();
+
+        // Closing the pipes is left to the reader, it will see EOF once the process is gone
+        process.onExit()
+                .completeOnTimeout(process, DESTROY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .thenAccept(exitedProcess -> {
+                    if (!exitedProcess.isAlive()) return;
+                    LOGGER.warn("Ngrok process did not exit in time. Destroying it forcibly");
+                    exitedProcess.destroyForcibly();
+                });
+    }
+
+    /**
+     * @return a future completing once the Ngrok process exited, which is at most shortly after
+     *         {@link #close()} forcibly destroyed it
+     */
+    @NotNull
+    public CompletableFuture<Process> onProcessExit() {
+        return process.onExit();
+    }
+
+    /**
+     * The event reused for every message, only to be used on the handler thread
+     */
+    @NotNull
+    NgrokLogEvent getLogEvent() {
+        return logEvent;
+    }
+
+    public long getLinesRead() {
+        return buffer.getLinesRead();
+    }
+
+    public long getLinesDropped() {
+        return buffer.getLinesDropped();
+    }
+
+    public long getQueueHighWaterMark() {
+        return buffer.getHighWaterMark();
+    }
+
+    /**
+     * @return the exit code of the process or -1 if it did not exit yet or was destroyed forcibly
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return the code of the last "ERR_NGROK_" error reported by the process or 0 if there was none
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    void setErrorCode(int errorCode) {
+        this.errorCode = errorCode;
     }
 
     public boolean isRunning() {
-        return !stopped;
+        return !stopped && process.isAlive();
     }
 
 }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Informs the user about problems of the Ngrok agent.
+ * Shown as dialogs by the GUI and written to the log in headless mode.
+ */
+@FunctionalInterface
+public interface Notifier {
+
+    void showWarning(@NotNull String title, @NotNull String message);
+
+}
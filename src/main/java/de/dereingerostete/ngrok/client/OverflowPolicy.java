@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+/**
+ * What a {@link LineRingBuffer} does if a line is offered while it is full
+ */
+public enum OverflowPolicy {
+    DROP_OLDEST, // Discard the oldest queued line, so the reader never waits
+    BLOCK        // Wait for the consumer, so no line is ever lost
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import lombok.Value;
+import lombok.With;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable snapshot of a tunnel managed by the {@link TunnelManager}
+ */
+@Value
+public class Tunnel {
+    @NotNull String name;
+    int port;
+    @With @NotNull TunnelState state;
+    @With @Nullable String url; // Public address without the "tcp://" prefix
+
+    @NotNull
+    public static String createName(int port) {
+        return "minecraft-" + port;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import de.dereingerostete.ngrok.minecraft.ServerStatus;
+import de.dereingerostete.ngrok.minecraft.StatusPinger;
+import de.dereingerostete.ngrok.util.config.HealthCheck;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Checks the public address of every online tunnel with a Server List Ping.
+ * All tunnels are pinged at once on a single selector, so one run of the checker only
+ * occupies a scheduler thread for at most the configured timeout.
+ */
+public class TunnelHealthChecker implements Runnable {
+    private final @NotNull TunnelManager manager;
+    private final @NotNull Supplier<HealthCheck> config; // Read on every run, so reloaded settings apply
+    private final @NotNull Map<String, Integer> failures; // Consecutive failures by tunnel name
+
+    public TunnelHealthChecker(@NotNull TunnelManager manager, @NotNull Supplier<HealthCheck> config) {
+        this.manager = manager;
+        this.config = config;
+        this.failures = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void run() {
+        Map<InetSocketAddress, Tunnel> targets = new HashMap<>();
+        List<Tunnel> failed = new ArrayList<>();
+        Set<String> checked = new HashSet<>();
+        for (Tunnel tunnel : manager.getTunnels()) {
+            if (!isChecked(tunnel.getState())) continue;
+            checked.add(tunnel.getName());
+
+            InetSocketAddress address = resolveAddress(tunnel.getUrl());
+            if (address != null) targets.put(address, tunnel);
+            else failed.add(tunnel);
+        }
+        failures.keySet().retainAll(checked);
+
+        if (!targets.isEmpty()) {
+            List<ServerStatus> results;
+            try {
+                StatusPinger pinger = new StatusPinger(16, config.get().getTimeout());
+                results = pinger.ping(new ArrayList<>(targets.keySet()));
+            } catch (IOException exception) {
+                LOGGER.warn("Failed to run tunnel health check", exception);
+                return;
+            }
+
+            for (ServerStatus status : results) {
+                Tunnel tunnel = targets.remove(status.getAddress());
+                if (tunnel != null) handleSuccess(tunnel, status.getLatency());
+            }
+            failed.addAll(targets.values()); // Did not answer in time
+        }
+
+        failed.forEach(this::handleFailure);
+    }
+
+    private void handleSuccess(@NotNull Tunnel tunnel, long latency) {
+        manager.getMetrics().getOrCreate(tunnel.getName()).getLatency().record(latency);
+        failures.remove(tunnel.getName());
+        LOGGER.debug("Health check of " + tunnel.getUrl() + " took " + latency + "ms");
+        manager.updateHealth(tunnel.getName(), TunnelState.ONLINE);
+    }
+
+    private void handleFailure(@NotNull Tunnel tunnel) {
+        int count = failures.merge(tunnel.getName(), 1, Integer::sum);
+        LOGGER.debug("Health check of " + tunnel.getUrl() + " failed (" + count + " in a row)");
+
+        HealthCheck settings = config.get();
+        if (count >= settings.getDownAfter()) manager.updateHealth(tunnel.getName(), TunnelState.DOWN);
+        else if (count >= settings.getDegradedAfter()) manager.updateHealth(tunnel.getName(), TunnelState.DEGRADED);
+    }
+
+    static boolean isChecked(@NotNull TunnelState state) {
+        return state == TunnelState.ONLINE || state == TunnelState.DEGRADED || state == TunnelState.DOWN;
+    }
+
+    @Nullable
+    private static InetSocketAddress resolveAddress(@Nullable String url) {
+        if (url == null) return null;
+
+        int index = url.lastIndexOf(':');
+        if (index == -1) return null;
+
+        try {
+            int port = Integer.parseInt(url.substring(index + 1));
+            InetSocketAddress address = new InetSocketAddress(url.substring(0, index), port);
+            if (address.isUnresolved()) {
+                LOGGER.debug("Failed to resolve tunnel address " + url);
+                return null;
+            }
+            return address;
+        } catch (IllegalArgumentException exception) {
+            LOGGER.debug("Invalid tunnel address: " + url);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public interface TunnelListener {
+
+    /**
+     * Called whenever a tunnel was added, removed or changed its state.
+     * This is not called on the event dispatch thread.
+     *
+     * @param tunnels The current tunnels ordered by the time they were opened
+     */
+    void onTunnelsChanged(@NotNull List<Tunnel> tunnels);
+
+}
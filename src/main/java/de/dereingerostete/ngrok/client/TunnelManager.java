@@ -0,0 +1,567 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import de.dereingerostete.ngrok.Bootstrap;
+import de.dereingerostete.ngrok.metrics.MetricsRegistry;
+import de.dereingerostete.ngrok.metrics.TunnelMetrics;
+import de.dereingerostete.ngrok.relay.AdmissionController;
+import de.dereingerostete.ngrok.relay.BackendResolver;
+import de.dereingerostete.ngrok.relay.HostnameResolver;
+import de.dereingerostete.ngrok.relay.RelayListener;
+import de.dereingerostete.ngrok.relay.RelayServer;
+import de.dereingerostete.ngrok.util.Schedulers;
+import de.dereingerostete.ngrok.util.config.ConfigUtils;
+import de.dereingerostete.ngrok.util.config.HealthCheck;
+import de.dereingerostete.ngrok.util.config.Relay;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.DumperOptions;
+import org.json.JSONObject;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Runs every tunnel in a single Ngrok agent.
+ * All tunnels are written into the "tunnels" section of the Ngrok config file
+ * and started together with "ngrok start", so they share one process and one session.
+ * While the agent is running, tunnels are added and removed through its local API
+ * and the agent is only restarted if the API is not reachable.
+ */
+public class TunnelManager {
+    private static final @NotNull String DEFAULT_WEB_ADDRESS = "localhost:4040";
+    private static final long METRICS_INTERVAL_SECONDS = 5;
+    private static final long STOP_TIMEOUT_SECONDS = 15;
+    private final @NotNull NgrokClient client;
+    private final @NotNull Map<Integer, Tunnel> tunnels;
+    private final @NotNull List<TunnelListener> listeners;
+    private final @Getter @NotNull MetricsRegistry metrics;
+    private volatile @NotNull List<Tunnel> snapshot;
+    private volatile @Nullable NgrokProcessThread agent;
+    private volatile @Nullable NgrokApiClient apiClient;
+    private final @NotNull TunnelHealthChecker healthChecker;
+    private final @Getter @NotNull AgentSupervisor supervisor;
+    private final @NotNull Map<Integer, RelayListener> relays;
+    private @Nullable RelayServer relayServer;
+    private @Nullable ScheduledFuture<?> metricsTask;
+    private @Nullable ScheduledFuture<?> healthTask;
+    private @NotNull CompletableFuture<Void> agentExit; // Exit of the last stopped agent
+    private long agentGeneration; // Changed whenever the agent is stopped, so outdated starts are skipped
+    private boolean starting;
+
+    public TunnelManager(@NotNull NgrokClient client) {
+        this.client = client;
+        this.tunnels = new LinkedHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.metrics = new MetricsRegistry();
+        this.snapshot = Collections.emptyList();
+        this.relays = new HashMap<>();
+        this.agentExit = CompletableFuture.completedFuture(null);
+        this.healthChecker = new TunnelHealthChecker(this, () -> Bootstrap.getReadOnlyConfig().getHealthCheck());
+        this.supervisor = new AgentSupervisor(() -> Bootstrap.getReadOnlyConfig().getAutoRestart(),
+                this::restartFromSupervisor);
+    }
+
+    /**
+     * Opens a tunnel to the given local port.
+     * A running agent gets the tunnel through its API, which is called outside the lock,
+     * so a slow agent never blocks the other calls of the manager. Otherwise the agent is restarted.
+     *
+     * @return false if no auth token is configured and the tunnel was not opened
+     */
+    public boolean openTunnel(int port) throws IOException {
+        String name = Tunnel.createName(port);
+        NgrokApiClient api;
+        Map<String, Object> tunnelConfig;
+        long generation;
+        synchronized (this) {
+            if (!client.hasAuthToken()) return false;
+            supervisor.reset();
+
+            Tunnel tunnel = tunnels.get(port);
+            if (tunnel != null && tunnel.getState() != TunnelState.OFFLINE && (isRunning() || starting)) return true;
+
+            // The relay is opened first, so a port that fails to bind never leaves a tunnel without a backend
+            try {
+                openRelay(port, metrics.getOrCreate(name));
+            } catch (IOException exception) {
+                if (tunnel == null) metrics.remove(name);
+                throw exception;
+            }
+            tunnels.put(port, new Tunnel(name, port, TunnelState.STARTING, null));
+
+            api = apiClient;
+            if (!isRunning() || api == null) {
+                restartAgent();
+                return true;
+            }
+
+            writeConfig(); // Keep the config in sync for the next restart
+            tunnelConfig = createTunnelConfig(port);
+            generation = agentGeneration;
+            publish();
+        }
+
+        try {
+            ApiTunnel started = api.startTunnel(name, tunnelConfig);
+            String url = started.getPublicUrl();
+            synchronized (this) {
+                // Skipped if the tunnel was closed or the agent was replaced in the meantime
+                if (generation == agentGeneration && tunnels.containsKey(port)) {
+                    tunnels.put(port, new Tunnel(name, port, TunnelState.ONLINE, url == null ? null : stripScheme(url)));
+                    publish();
+                }
+            }
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to start tunnel through the Ngrok API. Restarting agent", exception);
+            synchronized (this) {
+                if (generation == agentGeneration && tunnels.containsKey(port)) restartAgent();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes the tunnel of the given port. Like {@link #openTunnel(int)}, the API of the agent is called outside the lock.
+     */
+    public void closeTunnel(int port) throws IOException {
+        String name;
+        NgrokApiClient api;
+        long generation;
+        synchronized (this) {
+            Tunnel tunnel = tunnels.remove(port);
+            if (tunnel == null) return;
+            supervisor.reset();
+            metrics.remove(tunnel.getName());
+            closeRelay(port);
+
+            if (tunnels.isEmpty()) {
+                stopAgent();
+                return;
+            }
+
+            api = apiClient;
+            if (!isRunning() || api == null) {
+                restartAgent();
+                return;
+            }
+
+            writeConfig();
+            name = tunnel.getName();
+            generation = agentGeneration;
+            publish();
+        }
+
+        try {
+            api.stopTunnel(name);
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to stop tunnel through the Ngrok API. Restarting agent", exception);
+            synchronized (this) {
+                if (generation == agentGeneration && !tunnels.isEmpty()) restartAgent();
+            }
+        }
+    }
+
+    /**
+     * Lists the tunnels of the running agent through its local API
+     *
+     * @return the tunnels or an empty list if the agent is not running
+     */
+    @NotNull
+    public List<ApiTunnel> listAgentTunnels() throws IOException {
+        NgrokApiClient api = apiClient;
+        if (!isRunning() || api == null) return Collections.emptyList();
+        return api.listTunnels();
+    }
+
+    public synchronized void closeAll() {
+        supervisor.reset();
+        tunnels.values().forEach(tunnel -> metrics.remove(tunnel.getName()));
+        tunnels.clear();
+        stopAgent();
+        new ArrayList<>(relays.keySet()).forEach(this::closeRelay);
+
+        // Stops the relay workers, the server is created again by the next relayed tunnel
+        if (relayServer != null && relays.isEmpty()) {
+            relayServer.close();
+            relayServer = null;
+        }
+    }
+
+    /**
+     * Closes all tunnels and waits until the agent exited, so no Ngrok process outlives the application.
+     * Blocks for up to {@value STOP_TIMEOUT_SECONDS} seconds and must not be called on the event dispatch thread.
+     */
+    public void shutdown() {
+        CompletableFuture<Void> exit;
+        synchronized (this) {
+            closeAll();
+            exit = agentExit;
+        }
+
+        try {
+            exit.get();
+        } catch (ExecutionException exception) {
+            LOGGER.warn("Failed to wait for the Ngrok agent to exit", exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Nullable
+    public Tunnel getTunnel(int port) {
+        for (Tunnel tunnel : snapshot) {
+            if (tunnel.getPort() == port) return tunnel;
+        }
+        return null;
+    }
+
+    @NotNull
+    public List<Tunnel> getTunnels() {
+        return snapshot;
+    }
+
+    /**
+     * @return the local ports the relay listens on, these answer Server List Pings for the relayed server
+     */
+    @NotNull
+    public synchronized Set<Integer> getRelayPorts() {
+        Set<Integer> ports = new HashSet<>();
+        for (RelayListener relay : relays.values()) ports.add(relay.getPort());
+        return ports;
+    }
+
+    public boolean isRunning() {
+        NgrokProcessThread thread = agent;
+        return thread != null && thread.isRunning();
+    }
+
+    public void addListener(@NotNull TunnelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull TunnelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Called by the {@link NgrokHandler} once Ngrok reports the public address of a tunnel
+     */
+    public synchronized void handleTunnelStarted(@Nullable String name, @Nullable String address, @NotNull String url) {
+        Tunnel tunnel = findTunnel(name, address);
+        if (tunnel == null) {
+            LOGGER.warn("Ngrok started an unknown tunnel: " + name + " (" + address + ")");
+            return;
+        }
+
+        url = stripScheme(url);
+        LOGGER.info("Tunnel for port " + tunnel.getPort() + " is online at " + url);
+        tunnels.put(tunnel.getPort(), tunnel.withState(TunnelState.ONLINE).withUrl(url));
+        supervisor.handleOnline();
+        publish();
+    }
+
+    /**
+     * Called by the {@link TunnelHealthChecker} with the result of a health check.
+     * Only changes the state of tunnels that are online, degraded or down.
+     */
+    synchronized void updateHealth(@NotNull String name, @NotNull TunnelState state) {
+        for (Tunnel tunnel : tunnels.values()) {
+            if (!tunnel.getName().equals(name)) continue;
+
+            TunnelState previous = tunnel.getState();
+            if (previous == state || !TunnelHealthChecker.isChecked(previous)) return;
+
+            if (state == TunnelState.ONLINE) LOGGER.info("Tunnel " + tunnel.getUrl() + " is reachable again");
+            else LOGGER.warn("Tunnel " + tunnel.getUrl() + " is " + state.name().toLowerCase(Locale.ROOT));
+
+            tunnels.put(tunnel.getPort(), tunnel.withState(state));
+            publish();
+            return;
+        }
+    }
+
+    @Nullable
+    private Tunnel findTunnel(@Nullable String name, @Nullable String address) {
+        for (Tunnel tunnel : tunnels.values()) {
+            if (tunnel.getName().equals(name)) return tunnel;
+        }
+
+        if (address != null) {
+            int index = address.lastIndexOf(':');
+            String portString = index == -1 ? address : address.substring(index + 1);
+            try {
+                Tunnel tunnel = tunnels.get(Integer.parseInt(portString));
+                if (tunnel != null) return tunnel;
+            } catch (NumberFormatException ignored) {}
+        }
+
+        return tunnels.size() == 1 ? tunnels.values().iterator().next() : null;
+    }
+
+    /**
+     * Stops the agent and starts a new one once the old process exited.
+     * The start happens on the shared scheduler, so neither the caller nor the lock wait for the process.
+     */
+    private void restartAgent() throws IOException {
+        stopAgent();
+        writeConfig();
+
+        for (Tunnel tunnel : new ArrayList<>(tunnels.values())) {
+            tunnels.put(tunnel.getPort(), tunnel.withState(TunnelState.STARTING).withUrl(null));
+        }
+        publish();
+
+        // Wait for the old session to end, otherwise the new agent could hit the session limit,
+        // and for a running update, which replaces the executable
+        long generation = agentGeneration;
+        starting = true;
+        CompletableFuture.allOf(agentExit, client.whenUpdateFinished())
+                .thenRunAsync(() -> startAgent(generation), Schedulers.shared());
+    }
+
+    private synchronized void startAgent(long generation) {
+        if (generation != agentGeneration) return; // Stopped or restarted in the meantime
+        starting = false;
+        if (tunnels.isEmpty()) return;
+
+        List<String> names = new ArrayList<>();
+        tunnels.values().forEach(tunnel -> names.add(tunnel.getName()));
+        try {
+            LOGGER.info("Starting Ngrok agent with " + names.size() + " tunnel(s)");
+            agent = client.createAgent(names, this::handleAgentExit);
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to start Ngrok agent", exception);
+            markOffline();
+            if (supervisor.isRecovering()) supervisor.handleUnexpectedExit(-1, 0);
+            else client.getNotifier().showWarning("Unexpected Error", "Failed to start Ngrok. Please try again.");
+            return;
+        }
+
+        metricsTask = Schedulers.shared().scheduleWithFixedDelay(this::pollMetrics,
+                METRICS_INTERVAL_SECONDS, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        scheduleHealthCheck();
+    }
+
+    /**
+     * Applies a changed health check interval or switch to the running agent
+     */
+    public synchronized void rescheduleHealthCheck() {
+        if (healthTask != null) {
+            healthTask.cancel(false);
+            healthTask = null;
+        }
+        if (agent != null) scheduleHealthCheck();
+    }
+
+    private void scheduleHealthCheck() {
+        HealthCheck healthCheck = Bootstrap.getReadOnlyConfig().getHealthCheck();
+        if (healthCheck.isEnabled()) {
+            healthTask = Schedulers.shared().scheduleWithFixedDelay(healthChecker,
+                    healthCheck.getInterval(), healthCheck.getInterval(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the agent without waiting for its process, see {@link #agentExit}
+     */
+    private void stopAgent() {
+        NgrokProcessThread thread = agent;
+        agent = null;
+        agentGeneration++;
+        starting = false;
+        cancelTasks();
+
+        if (thread != null) {
+            LOGGER.info("Stopping Ngrok agent");
+            thread.close();
+            agentExit = thread.onProcessExit()
+                    .orTimeout(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .handle((process, throwable) -> {
+                        if (throwable != null) LOGGER.warn("Ngrok agent did not stop in time");
+                        return null;
+                    });
+        }
+
+        markOffline();
+    }
+
+    private synchronized void handleAgentExit(@NotNull NgrokProcessThread thread) {
+        if (agent != thread) return; // Replaced or stopped on purpose
+
+        agent = null;
+        cancelTasks();
+        LOGGER.warn("Ngrok agent exited unexpectedly");
+        markOffline();
+        if (!tunnels.isEmpty()) supervisor.handleUnexpectedExit(thread.getExitCode(), thread.getErrorCode());
+    }
+
+    private synchronized void restartFromSupervisor() {
+        if (tunnels.isEmpty() || isRunning() || starting) return;
+
+        try {
+            restartAgent();
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to restart Ngrok agent", exception);
+            supervisor.handleUnexpectedExit(-1, 0);
+        }
+    }
+
+    private void pollMetrics() {
+        try {
+            for (ApiTunnel tunnel : listAgentTunnels()) {
+                JSONObject conns = tunnel.getMetrics().optJSONObject("conns");
+                if (conns != null) metrics.getOrCreate(tunnel.getName()).updateFromAgent(conns);
+            }
+        } catch (IOException exception) {
+            LOGGER.debug("Failed to poll Ngrok metrics", exception);
+        }
+    }
+
+    private void cancelTasks() {
+        if (metricsTask != null) {
+            metricsTask.cancel(false);
+            metricsTask = null;
+        }
+        if (healthTask != null) {
+            healthTask.cancel(false);
+            healthTask = null;
+        }
+    }
+
+    private void markOffline() {
+        for (Tunnel tunnel : new ArrayList<>(tunnels.values())) {
+            tunnels.put(tunnel.getPort(), tunnel.withState(TunnelState.OFFLINE).withUrl(null));
+        }
+        publish();
+    }
+
+    private void writeConfig() throws IOException {
+        File configFile = client.getNgrokConfigFile();
+        Yaml yaml = createYaml();
+
+        Map<String, Object> config = null;
+        if (configFile.exists()) {
+            String content = Files.readString(configFile.toPath(), StandardCharsets.UTF_8);
+            config = yaml.load(content);
+        }
+        if (config == null) config = new LinkedHashMap<>();
+
+        Object webAddress = config.get("web_addr");
+        if (webAddress == null) {
+            webAddress = DEFAULT_WEB_ADDRESS;
+            config.put("web_addr", webAddress);
+        }
+
+        NgrokApiClient api = apiClient;
+        if (api == null || !api.getWebAddress().equals(webAddress.toString())) {
+            apiClient = new NgrokApiClient(webAddress.toString());
+        }
+
+        Map<String, Object> tunnelSection = new LinkedHashMap<>();
+        for (Tunnel tunnel : tunnels.values()) {
+            tunnelSection.put(tunnel.getName(), createTunnelConfig(tunnel.getPort()));
+        }
+        config.put("tunnels", tunnelSection);
+
+        ConfigUtils.writeAtomically(configFile, yaml.dump(config));
+    }
+
+    /**
+     * Creates the Ngrok configuration of a tunnel, forwarding to the relay if there is one
+     */
+    @NotNull
+    private Map<String, Object> createTunnelConfig(int port) {
+        Map<String, Object> tunnelConfig = new LinkedHashMap<>();
+        tunnelConfig.put("proto", "tcp");
+
+        RelayListener relay = relays.get(port);
+        if (relay == null) {
+            tunnelConfig.put("addr", String.valueOf(port));
+        } else {
+            tunnelConfig.put("addr", String.valueOf(relay.getPort()));
+            if (relay.isProxyProtocol()) tunnelConfig.put("proxy_proto", "2");
+        }
+        return tunnelConfig;
+    }
+
+    private void openRelay(int port, @NotNull TunnelMetrics tunnelMetrics) throws IOException {
+        Relay config = Bootstrap.getReadOnlyConfig().getRelay();
+        if (!config.isEnabled() || relays.containsKey(port)) return;
+
+        if (relayServer == null) {
+            AdmissionController admission = new AdmissionController(config.getMaxConnections(),
+                    config.getMaxConnectionsPerAddress(), config.getBandwidth() * 1024L,
+                    config.getBandwidthPerConnection() * 1024L, config.getBufferSize() * 4L);
+            relayServer = new RelayServer(config.getWorkers(), config.getBufferSize(), admission);
+        }
+        InetSocketAddress backend = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        BackendResolver resolver = config.getRoutes().isEmpty()
+                ? BackendResolver.fixed(backend)
+                : HostnameResolver.fromConfig(config.getRoutes(), backend);
+        RelayListener relay = relayServer.open(resolver, tunnelMetrics, config.isProxyProtocol());
+        relays.put(port, relay);
+        LOGGER.info("Relaying port " + relay.getPort() + " to " + port);
+    }
+
+    private void closeRelay(int port) {
+        RelayListener relay = relays.remove(port);
+        if (relay != null) relay.close();
+    }
+
+    @NotNull
+    private static String stripScheme(@NotNull String url) {
+        return url.startsWith("tcp://") ? url.substring(6) : url;
+    }
+
+    @NotNull
+    private static Yaml createYaml() {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setAllowUnicode(true);
+        return new Yaml(options);
+    }
+
+    private void publish() {
+        List<Tunnel> tunnels = List.copyOf(this.tunnels.values());
+        this.snapshot = tunnels;
+        for (TunnelListener listener : listeners) {
+            try {
+                listener.onTunnelsChanged(tunnels);
+            } catch (RuntimeException exception) {
+                LOGGER.warn("Tunnel listener threw exception", exception);
+            }
+        }
+    }
+
+}
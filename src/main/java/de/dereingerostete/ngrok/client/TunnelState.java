@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+public enum TunnelState {
+    STARTING,
+    ONLINE,
+    DEGRADED, // Online, but the last health check failed
+    DOWN, // Online, but several health checks in a row failed
+    OFFLINE
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.control;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.dereingerostete.ngrok.client.AgentSupervisor;
+import de.dereingerostete.ngrok.client.Tunnel;
+import de.dereingerostete.ngrok.client.TunnelListener;
+import de.dereingerostete.ngrok.client.TunnelManager;
+import de.dereingerostete.ngrok.client.TunnelState;
+import de.dereingerostete.ngrok.metrics.MetricsSnapshot;
+import de.dereingerostete.ngrok.metrics.TunnelMetrics;
+import de.dereingerostete.ngrok.util.config.ConfigUtils;
+import de.dereingerostete.ngrok.util.config.ControlApi;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalInt;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Small JSON API on the loopback interface for controlling the tunnels from scripts.
+ * The tunnel state is read from the snapshot of the {@link TunnelManager}, never from the GUI.
+ * <ul>
+ *     <li>{@code GET /status} - agent and restart state</li>
+ *     <li>{@code GET /tunnels} - all tunnels</li>
+ *     <li>{@code GET /tunnels/<port>} - a single tunnel</li>
+ *     <li>{@code POST /tunnels/<port>} - opens a tunnel</li>
+ *     <li>{@code DELETE /tunnels/<port>} - closes a tunnel</li>
+ *     <li>{@code POST /detect} - detects the port of Minecraft, opens it with {@code ?open=true}</li>
+ * </ul>
+ * The tunnel requests accept {@code ?wait=<milliseconds>} to answer once the tunnel has a public address.
+ * Requests from web pages, detected by their Origin or a Host other than the loopback interface, are rejected.
+ */
+public class ControlServer implements Closeable {
+    private static final long MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final @NotNull String TUNNELS_PATH = "/tunnels/";
+    private final @NotNull TunnelManager manager;
+    private final @NotNull String token;
+    private final @NotNull HttpServer server;
+    private final @NotNull ThreadPoolExecutor executor;
+
+    public ControlServer(@NotNull TunnelManager manager, @NotNull ControlApi config) throws IOException {
+        this.manager = manager;
+        this.token = config.getToken();
+
+        // Requests exceeding the queue are rejected and their connection is closed by the server
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueSize()), runnable -> {
+            Thread thread = new Thread(runnable, "ControlApiThread-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // The server writes headers and body separately, with Nagle's algorithm every answer would wait ~40ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort());
+        this.server = HttpServer.create(address, config.getQueueSize());
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Control API listening on http://" + getAddress().getHostString() + ":" + getAddress().getPort());
+    }
+
+    @NotNull
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(@NotNull HttpExchange exchange) throws IOException {
+        try {
+            // Browsers always send an Origin for cross-site requests, so web pages can't open tunnels.
+            // A page whose domain was rebound to 127.0.0.1 is same-origin, but still sends its own domain as Host
+            if (exchange.getRequestHeaders().containsKey("Origin")) {
+                sendError(exchange, 403, "Cross-origin requests are not allowed");
+            } else if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host"))) {
+                sendError(exchange, 403, "Host is not allowed");
+            } else if (!token.isEmpty() && !("Bearer " + token).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                sendError(exchange, 401, "Missing or invalid token");
+            } else {
+                route(exchange);
+            }
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to handle control API request " + exchange.getRequestURI(), exception);
+            if (exchange.getResponseCode() == -1) sendError(exchange, 500, exception.getMessage());
+        } catch (RuntimeException exception) {
+            LOGGER.error("Unexpected error while handling control API request " + exchange.getRequestURI(), exception);
+            if (exchange.getResponseCode() == -1) sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(@NotNull HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+
+        if (path.equals("/status")) {
+            if (!method.equals("GET")) sendError(exchange, 405, "Method not allowed");
+            else send(exchange, 200, createStatus());
+        } else if (path.equals("/tunnels") || path.equals(TUNNELS_PATH)) {
+            if (!method.equals("GET")) sendError(exchange, 405, "Method not allowed");
+            else send(exchange, 200, new JSONObject().put("tunnels", toJson(manager.getTunnels())));
+        } else if (path.startsWith(TUNNELS_PATH)) {
+            int port = parsePort(path.substring(TUNNELS_PATH.length()));
+            if (port == -1) sendError(exchange, 400, "Invalid port");
+            else handleTunnel(exchange, method, port);
+        } else if (path.equals("/detect")) {
+            if (!method.equals("POST")) sendError(exchange, 405, "Method not allowed");
+            else handleDetect(exchange);
+        } else {
+            sendError(exchange, 404, "Unknown path");
+        }
+    }
+
+    private void handleTunnel(@NotNull HttpExchange exchange, @NotNull String method, int port) throws IOException {
+        switch (method) {
+            case "GET":
+                break;
+            case "POST":
+                if (!manager.openTunnel(port)) {
+                    sendError(exchange, 409, "Auth token is missing");
+                    return;
+                }
+                break;
+            case "DELETE":
+                manager.closeTunnel(port);
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            default:
+                sendError(exchange, 405, "Method not allowed");
+                return;
+        }
+
+        Tunnel tunnel = awaitAddress(port, getWaitMillis(exchange));
+        if (tunnel == null) sendError(exchange, 404, "No tunnel for port " + port);
+        else send(exchange, 200, toJson(tunnel));
+    }
+
+    private void handleDetect(@NotNull HttpExchange exchange) throws IOException {
+        OptionalInt detectedPort = ConfigUtils.detectMinecraftPort();
+        if (detectedPort.isEmpty()) {
+            sendError(exchange, 404, "No port detected");
+            return;
+        }
+
+        int port = detectedPort.getAsInt();
+        if (!"true".equals(getQueryParameter(exchange, "open"))) {
+            send(exchange, 200, new JSONObject().put("port", port));
+            return;
+        }
+
+        LOGGER.info("Opening tunnel for detected port " + port + " from the control API");
+        handleTunnel(exchange, "POST", port);
+    }
+
+    /**
+     * Waits until the tunnel has a public address, was closed or the time is up
+     *
+     * @return the latest state of the tunnel or null if there is no tunnel for the port
+     */
+    @Nullable
+    private Tunnel awaitAddress(int port, long waitMillis) {
+        Tunnel current = manager.getTunnel(port);
+        if (waitMillis <= 0 || current == null || !isPending(current)) return current;
+
+        CompletableFuture<Tunnel> future = new CompletableFuture<>();
+        TunnelListener listener = tunnels -> {
+            Tunnel tunnel = findTunnel(tunnels, port);
+            if (tunnel == null || !isPending(tunnel)) future.complete(tunnel);
+        };
+
+        manager.addListener(listener);
+        try {
+            listener.onTunnelsChanged(manager.getTunnels()); // Changed before the listener was added
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException exception) {
+            return manager.getTunnel(port);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return manager.getTunnel(port);
+        } finally {
+            manager.removeListener(listener);
+        }
+    }
+
+    private static boolean isPending(@NotNull Tunnel tunnel) {
+        return tunnel.getState() == TunnelState.STARTING || tunnel.getUrl() == null && tunnel.getState() != TunnelState.OFFLINE;
+    }
+
+    @Nullable
+    private static Tunnel findTunnel(@NotNull List<Tunnel> tunnels, int port) {
+        for (Tunnel tunnel : tunnels) {
+            if (tunnel.getPort() == port) return tunnel;
+        }
+        return null;
+    }
+
+    @NotNull
+    private JSONObject createStatus() {
+        AgentSupervisor supervisor = manager.getSupervisor();
+        return new JSONObject()
+                .put("running", manager.isRunning())
+                .put("recovering", supervisor.isRecovering())
+                .put("restarts", supervisor.getRestartCount())
+                .put("tunnels", manager.getTunnels().size());
+    }
+
+    @NotNull
+    private JSONArray toJson(@NotNull List<Tunnel> tunnels) {
+        JSONArray array = new JSONArray();
+        tunnels.forEach(tunnel -> array.put(toJson(tunnel)));
+        return array;
+    }
+
+    @NotNull
+    private JSONObject toJson(@NotNull Tunnel tunnel) {
+        JSONObject object = new JSONObject()
+                .put("name", tunnel.getName())
+                .put("port", tunnel.getPort())
+                .put("state", tunnel.getState().name())
+                .put("url", tunnel.getUrl() == null ? JSONObject.NULL : tunnel.getUrl());
+
+        TunnelMetrics metrics = manager.getMetrics().get(tunnel.getName());
+        if (metrics != null) {
+            MetricsSnapshot snapshot = metrics.snapshot();
+            object.put("connections", snapshot.getConnections())
+                    .put("openConnections", snapshot.getOpenConnections())
+                    .put("rejectedConnections", snapshot.getRejectedConnections())
+                    .put("bytesIn", snapshot.getBytesIn())
+                    .put("bytesOut", snapshot.getBytesOut())
+                    .put("latency", snapshot.getLatency());
+        }
+        return object;
+    }
+
+    private static long getWaitMillis(@NotNull HttpExchange exchange) {
+        String value = getQueryParameter(exchange, "wait");
+        if (value == null) return 0;
+
+        try {
+            return Math.min(Math.max(Long.parseLong(value), 0), MAX_WAIT_MILLIS);
+        } catch (NumberFormatException exception) {
+            return 0;
+        }
+    }
+
+    @Nullable
+    private static String getQueryParameter(@NotNull HttpExchange exchange, @NotNull String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) return null;
+
+        for (String parameter : query.split("&")) {
+            int index = parameter.indexOf('=');
+            String key = index == -1 ? parameter : parameter.substring(0, index);
+            if (key.equals(name)) return index == -1 ? "" : parameter.substring(index + 1);
+        }
+        return null;
+    }
+
+    /**
+     * @param host The Host header of a request, optionally with a port
+     * @return true if the host names the loopback interface
+     */
+    static boolean isLoopbackHost(@Nullable String host) {
+        if (host == null) return false;
+        String name = host.trim().toLowerCase(Locale.ROOT);
+        if (name.startsWith("[")) {
+            int end = name.indexOf(']');
+            if (end == -1) return false;
+            name = name.substring(1, end);
+        } else {
+            int index = name.indexOf(':');
+            if (index != -1) name = name.substring(0, index);
+        }
+        return name.equals("localhost") || name.equals("127.0.0.1") || name.equals("::1");
+    }
+
+    private static int parsePort(@NotNull String value) {
+        try {
+            int port = Integer.parseInt(value);
+            return port >= 1 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    private static void sendError(@NotNull HttpExchange exchange, int status, @Nullable String message) throws IOException {
+        send(exchange, status, new JSONObject().put("error", message == null ? "Unknown error" : message));
+    }
+
+    private static void send(@NotNull HttpExchange exchange, int status, @NotNull Object json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+
+@Value
+public class DetectedPort {
+    int port;
+    boolean confident; // False if the port is only a guess, e.g. a default value
+    @NotNull String source;
+
+}
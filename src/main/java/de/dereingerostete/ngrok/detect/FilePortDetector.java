@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detector reading a single file. Results are cached by the path, size and modification time
+ * of the file, so repeated detections of an unchanged file return instantly.
+ */
+public abstract class FilePortDetector implements PortDetector {
+    private final @NotNull Map<Path, CachedResult> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @return the file to read or null if it does not exist
+     */
+    @Nullable
+    protected abstract Path resolveFile(@NotNull File minecraftFolder) throws IOException;
+
+    @Nullable
+    protected abstract DetectedPort parse(@NotNull Path file) throws IOException;
+
+    @Nullable
+    @Override
+    public DetectedPort detect(@NotNull File minecraftFolder) throws IOException {
+        Path file = resolveFile(minecraftFolder);
+        if (file == null || !Files.isRegularFile(file)) return null;
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        CachedResult cached = cache.get(file);
+        if (cached != null && cached.getSize() == size && cached.getModified() == modified) {
+            return cached.getResult();
+        }
+
+        DetectedPort result = parse(file);
+        cache.put(file, new CachedResult(size, modified, result));
+        return result;
+    }
+
+    @Value
+    private static class CachedResult {
+        long size;
+        long modified;
+        @Nullable DetectedPort result;
+    }
+
+}
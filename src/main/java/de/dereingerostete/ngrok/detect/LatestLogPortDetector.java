@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import de.dereingerostete.ngrok.Bootstrap;
+import de.dereingerostete.ngrok.util.ReverseLineReader;
+import de.dereingerostete.ngrok.util.config.ConfigUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.OptionalInt;
+
+/**
+ * Finds the last opened LAN world or started server in the logs/latest.log file
+ */
+public class LatestLogPortDetector extends FilePortDetector {
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "latest.log";
+    }
+
+    @Nullable
+    @Override
+    protected Path resolveFile(@NotNull File minecraftFolder) {
+        return minecraftFolder.toPath().resolve("logs").resolve("latest.log");
+    }
+
+    @Nullable
+    @Override
+    protected DetectedPort parse(@NotNull Path file) throws IOException {
+        OptionalInt port = scanLog(file);
+        return port.isPresent() ? new DetectedPort(port.getAsInt(), true, getName()) : null;
+    }
+
+    /**
+     * Scans a log file from its end for the last line announcing a port
+     */
+    @NotNull
+    public static OptionalInt scanLog(@NotNull Path file) throws IOException {
+        long byteBudget = Bootstrap.getReadOnlyConfig().getLogScanLimit() * 1024L * 1024L;
+        try (ReverseLineReader reader = new ReverseLineReader(file, byteBudget)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (Thread.interrupted()) throw new InterruptedIOException("Log scan was cancelled");
+
+                OptionalInt port = ConfigUtils.parsePortLine(line);
+                if (port.isPresent()) return port;
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import de.dereingerostete.ngrok.util.config.ConfigUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Follows Minecraft's logs/latest.log and publishes the port as soon as a LAN world is opened.
+ * The thread blocks on a {@link WatchService} while the file is idle and only reads bytes
+ * that were appended since the last read. Rotation and truncation restart at the beginning of the file.
+ * A port is only published again after it changed or the file was replaced, so a reread never repeats it.
+ */
+public class LatestLogWatcher implements Closeable {
+    private static final @NotNull String LOG_NAME = "latest.log";
+    private final @NotNull Path logsFolder;
+    private final @NotNull Path logFile;
+    private final @NotNull IntConsumer portConsumer;
+    private final @NotNull ByteBuffer buffer;
+    private final @NotNull ByteArrayOutputStream partialLine;
+    private final @NotNull Thread thread;
+    private @Nullable WatchService watchService;
+    private @Nullable Object fileKey;
+    private long offset;
+    private int publishedPort = -1;
+    private volatile boolean closed;
+
+    public LatestLogWatcher(@NotNull Path minecraftFolder, @NotNull IntConsumer portConsumer) {
+        this.logsFolder = minecraftFolder.resolve("logs");
+        this.logFile = logsFolder.resolve(LOG_NAME);
+        this.portConsumer = portConsumer;
+        this.buffer = ByteBuffer.allocate(16 * 1024);
+        this.partialLine = new ByteArrayOutputStream();
+        this.thread = new Thread(this::run, "LogWatcherThread");
+        thread.setDaemon(true);
+    }
+
+    public void start() throws IOException {
+        if (!Files.isDirectory(logsFolder)) throw new IOException("Minecraft's log folder does not exist");
+
+        WatchService service = FileSystems.getDefault().newWatchService();
+        logsFolder.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.watchService = service;
+
+        // Only lines written from now on are of interest
+        if (Files.exists(logFile)) {
+            BasicFileAttributes attributes = Files.readAttributes(logFile, BasicFileAttributes.class);
+            offset = attributes.size();
+            fileKey = attributes.fileKey();
+        }
+
+        thread.start();
+        LOGGER.info("Watching " + logFile + " for opened LAN worlds");
+    }
+
+    private void run() {
+        WatchService service = Objects.requireNonNull(watchService);
+        try {
+            while (!closed) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changed = true;
+                        continue;
+                    }
+
+                    Path name = (Path) event.context();
+                    if (!name.toString().equals(LOG_NAME)) continue;
+
+                    if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) reset(); // Rotated
+                    changed = true;
+                }
+
+                if (changed) readAppended();
+                if (!key.reset()) {
+                    LOGGER.warn("Minecraft's log folder is no longer accessible. Stopping log watcher");
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException exception) {
+            // Closed
+        }
+    }
+
+    private void readAppended() {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Object currentKey = Files.readAttributes(logFile, BasicFileAttributes.class).fileKey();
+            if (size < offset || (currentKey != null && !currentKey.equals(fileKey))) {
+                reset(); // Truncated or replaced
+            }
+            fileKey = currentKey;
+
+            while (offset < size) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                if (read <= 0) break;
+
+                offset += read;
+                processBytes(buffer.array(), read);
+            }
+        } catch (NoSuchFileException exception) {
+            reset();
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to read Minecraft's latest.log", exception);
+        }
+    }
+
+    private void processBytes(byte @NotNull [] bytes, int length) {
+        int lineStart = 0;
+        for (int index = 0; index < length; index++) {
+            if (bytes[index] != '\n') continue;
+
+            partialLine.write(bytes, lineStart, index - lineStart);
+            handleLine(partialLine.toString(StandardCharsets.UTF_8));
+            partialLine.reset();
+            lineStart = index + 1;
+        }
+        partialLine.write(bytes, lineStart, length - lineStart);
+    }
+
+    private void handleLine(@NotNull String line) {
+        OptionalInt port = ConfigUtils.parsePortLine(line);
+        if (port.isEmpty() || port.getAsInt() == publishedPort) return;
+
+        publishedPort = port.getAsInt();
+        LOGGER.info("Detected opened LAN world on port " + port.getAsInt());
+        portConsumer.accept(port.getAsInt());
+    }
+
+    private void reset() {
+        offset = 0;
+        fileKey = null;
+        publishedPort = -1;
+        partialLine.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (watchService != null) watchService.close();
+    }
+
+}
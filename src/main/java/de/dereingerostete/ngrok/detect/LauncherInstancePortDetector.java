@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.OptionalInt;
+
+/**
+ * Finds the most recently used instance of a launcher folder and scans its latest.log.
+ * Supports the "instances" folder of Prism Launcher and MultiMC and the "Instances" folder of CurseForge.
+ */
+public class LauncherInstancePortDetector extends FilePortDetector {
+    private static final @NotNull String @NotNull [] INSTANCE_FOLDERS = {"instances", "Instances"};
+    private static final @NotNull String @NotNull [] GAME_FOLDERS = {".minecraft", "minecraft", ""};
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "launcher instances";
+    }
+
+    @Nullable
+    @Override
+    protected Path resolveFile(@NotNull File minecraftFolder) throws IOException {
+        Path newestLog = null;
+        FileTime newestTime = null;
+
+        for (String instanceFolderName : INSTANCE_FOLDERS) {
+            Path instanceFolder = minecraftFolder.toPath().resolve(instanceFolderName);
+            if (!Files.isDirectory(instanceFolder)) continue;
+
+            try (DirectoryStream<Path> instances = Files.newDirectoryStream(instanceFolder, Files::isDirectory)) {
+                for (Path instance : instances) {
+                    for (String gameFolder : GAME_FOLDERS) {
+                        Path log = instance.resolve(gameFolder).resolve("logs").resolve("latest.log");
+                        if (!Files.isRegularFile(log)) continue;
+
+                        FileTime time = Files.getLastModifiedTime(log);
+                        if (newestTime == null || time.compareTo(newestTime) > 0) {
+                            newestLog = log;
+                            newestTime = time;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return newestLog;
+    }
+
+    @Nullable
+    @Override
+    protected DetectedPort parse(@NotNull Path file) throws IOException {
+        OptionalInt port = LatestLogPortDetector.scanLog(file);
+        return port.isPresent() ? new DetectedPort(port.getAsInt(), true, getName()) : null;
+    }
+
+}
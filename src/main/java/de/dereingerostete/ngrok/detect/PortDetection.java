@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Runs all {@link PortDetector}s concurrently and returns the first confident result.
+ * The remaining detectors are cancelled as soon as a confident port is found or the timeout is reached.
+ */
+public class PortDetection {
+    private final @NotNull List<PortDetector> detectors;
+    private final @NotNull ExecutorService executor;
+
+    public PortDetection(@NotNull List<PortDetector> detectors) {
+        this.detectors = List.copyOf(detectors);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.detectors.size(), runnable -> {
+            Thread thread = new Thread(runnable, "PortDetectorThread-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @NotNull
+    public static PortDetection createDefault() {
+        List<PortDetector> detectors = List.of(
+                new LatestLogPortDetector(),
+                new LauncherInstancePortDetector(),
+                new ServerPropertiesPortDetector(),
+                new ServerListPingPortDetector()
+        );
+        return new PortDetection(detectors);
+    }
+
+    /**
+     * @param timeoutMillis The time in milliseconds all detectors together may take
+     */
+    @NotNull
+    public OptionalInt detect(@NotNull File minecraftFolder, long timeoutMillis) {
+        ExecutorCompletionService<DetectedPort> service = new ExecutorCompletionService<>(executor);
+        List<Future<DetectedPort>> futures = new ArrayList<>(detectors.size());
+        for (PortDetector detector : detectors) {
+            futures.add(service.submit(() -> detector.detect(minecraftFolder)));
+        }
+
+        DetectedPort fallback = null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                long remaining = deadline - System.nanoTime();
+                Future<DetectedPort> future = service.poll(remaining, TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    LOGGER.warn("Port detection timed out after " + timeoutMillis + "ms");
+                    break;
+                }
+
+                DetectedPort result = getResult(future);
+                if (result == null) continue;
+                if (result.isConfident()) {
+                    LOGGER.info("Detected port " + result.getPort() + " using " + result.getSource());
+                    return OptionalInt.of(result.getPort());
+                }
+                if (fallback == null) fallback = result;
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        if (fallback == null) return OptionalInt.empty();
+        LOGGER.info("Guessed port " + fallback.getPort() + " using " + fallback.getSource());
+        return OptionalInt.of(fallback.getPort());
+    }
+
+    @Nullable
+    private static DetectedPort getResult(@NotNull Future<DetectedPort> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException exception) {
+            LOGGER.warn("Port detector failed", exception.getCause());
+            return null;
+        }
+    }
+
+}
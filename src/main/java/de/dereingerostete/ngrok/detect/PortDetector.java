@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Detects the port of a Minecraft server or LAN world.
+ * Detectors are run concurrently by {@link PortDetection} and must react to interruption.
+ */
+public interface PortDetector {
+
+    @NotNull
+    String getName();
+
+    /**
+     * @param minecraftFolder The configured Minecraft folder
+     * @return the detected port or null if this detector found nothing
+     */
+    @Nullable
+    DetectedPort detect(@NotNull File minecraftFolder) throws IOException;
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import de.dereingerostete.ngrok.Bootstrap;
+import de.dereingerostete.ngrok.client.NgrokClient;
+import de.dereingerostete.ngrok.minecraft.ServerStatus;
+import de.dereingerostete.ngrok.minecraft.StatusPinger;
+import de.dereingerostete.ngrok.util.config.PortProbe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Finds running servers by sending a Server List Ping to every port of the configured range.
+ * Ports of the own relay are skipped, as they answer for the server they forward to.
+ * The result is only confident if exactly one server answered.
+ */
+public class ServerListPingPortDetector implements PortDetector {
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "server list ping";
+    }
+
+    @Nullable
+    @Override
+    public DetectedPort detect(@NotNull File minecraftFolder) throws IOException {
+        PortProbe config = Bootstrap.getReadOnlyConfig().getPortProbe();
+        if (!config.isEnabled()) return null;
+
+        NgrokClient client = Bootstrap.getClient();
+        Set<Integer> relayPorts = client == null ? Set.of() : client.getTunnelManager().getRelayPorts();
+
+        StatusPinger pinger = new StatusPinger(config.getMaxInFlight(), config.getTimeout());
+        long start = System.nanoTime();
+        List<ServerStatus> servers = pinger.ping(new PortRange(config.getFromPort(), config.getToPort(), relayPorts));
+        LOGGER.info("Pinged ports " + config.getFromPort() + "-" + config.getToPort() + " in "
+                + (System.nanoTime() - start) / 1_000_000L + "ms");
+
+        for (ServerStatus server : servers) {
+            LOGGER.info("Found Minecraft server on port " + server.getAddress().getPort() + ": \"" + server.getMotd()
+                    + "\" (" + server.getVersion() + ", " + server.getOnlinePlayers() + "/"
+                    + server.getMaxPlayers() + " players)");
+        }
+
+        if (servers.isEmpty()) return null;
+        int port = servers.get(0).getAddress().getPort();
+        return new DetectedPort(port, servers.size() == 1, getName());
+    }
+
+    private static class PortRange implements Iterator<InetSocketAddress> {
+        private final @NotNull InetAddress loopback = InetAddress.getLoopbackAddress();
+        private final int toPort;
+        private final @NotNull Set<Integer> excludedPorts;
+        private int next;
+
+        private PortRange(int fromPort, int toPort, @NotNull Set<Integer> excludedPorts) {
+            this.next = Math.max(fromPort, 1);
+            this.toPort = Math.min(toPort, 65535);
+            this.excludedPorts = excludedPorts;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next <= toPort && excludedPorts.contains(next)) next++;
+            return next <= toPort;
+        }
+
+        @Override
+        public InetSocketAddress next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return new InetSocketAddress(loopback, next++);
+        }
+
+    }
+
+}
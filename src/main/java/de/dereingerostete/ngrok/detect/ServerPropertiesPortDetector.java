@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Reads the "server-port" of a dedicated server's server.properties file
+ */
+public class ServerPropertiesPortDetector extends FilePortDetector {
+    private static final int DEFAULT_PORT = 25565;
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "server.properties";
+    }
+
+    @Nullable
+    @Override
+    protected Path resolveFile(@NotNull File minecraftFolder) {
+        return minecraftFolder.toPath().resolve("server.properties");
+    }
+
+    @Nullable
+    @Override
+    protected DetectedPort parse(@NotNull Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+            properties.load(reader);
+        }
+
+        String value = properties.getProperty("server-port");
+        if (value == null || value.isBlank()) return new DetectedPort(DEFAULT_PORT, false, getName());
+
+        try {
+            int port = Integer.parseInt(value.trim());
+            if (port >= 1 && port <= 65535) return new DetectedPort(port, true, getName());
+        } catch (NumberFormatException exception) {
+            LOGGER.warn("Invalid server-port in server.properties: " + value);
+        }
+        return null;
+    }
+
+}
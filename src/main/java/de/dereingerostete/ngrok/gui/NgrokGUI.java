@@ -10,11 +10,11 @@
 package de.dereingerostete.ngrok.gui;
 
 import de.dereingerostete.ngrok.Bootstrap;
-import de.dereingerostete.ngrok.client.NgrokProcessThread;
+import de.dereingerostete.ngrok.client.NgrokClient;
 import de.dereingerostete.ngrok.gui.panel.ActivePanel;
 import de.dereingerostete.ngrok.gui.panel.LoadingPanel;
 import de.dereingerostete.ngrok.gui.panel.MainPanel;
-import de.dereingerostete.ngrok.util.GUIUtils;
+import de.dereingerostete.ngrok.util.FontRegistry;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 
@@ -31,7 +31,7 @@ public class NgrokGUI {
         frame.setVisible(false);
         frame.setTitle("Ngrok Minecraft GUI");
         frame.setBounds(100, 100, 650, 395);
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); // Exits after the shutdown handlers, see below
         frame.addWindowListener(new WindowCloseListener());
         frame.setLocationRelativeTo(null);
         frame.setResizable(false);
@@ -39,7 +39,7 @@ public class NgrokGUI {
 
         JLabel titleText = new JLabel("Ngrok Minecraft GUI");
         titleText.setToolTipText("This is a title. Isn't that cool?");
-        titleText.setFont(GUIUtils.TITLE_FONT);
+        titleText.setFont(FontRegistry.getTitleFont());
         titleText.setHorizontalAlignment(SwingConstants.CENTER);
         titleText.setBounds(10, 0, 615, 25);
         frame.add(titleText);
@@ -50,6 +50,14 @@ public class NgrokGUI {
 
         this.activePanel = new LoadingPanel("Loading...");
         changePanel(activePanel);
+        FontRegistry.refreshWhenLoaded(frame);
+    }
+
+    /**
+     * Replaces the loading panel with the main interface
+     */
+    public void showMainPanel() {
+        changePanel(new MainPanel());
     }
 
     public void changePanel(@NotNull ActivePanel panel) {
@@ -63,6 +71,13 @@ public class NgrokGUI {
         SwingUtilities.updateComponentTreeUI(frame);
     }
 
+    /**
+     * Updates all components after the look and feel was changed
+     */
+    public void updateLookAndFeel() {
+        SwingUtilities.updateComponentTreeUI(frame);
+    }
+
     public void setVisible(boolean visible) {
         frame.setVisible(visible);
     }
@@ -71,19 +86,19 @@ public class NgrokGUI {
 
         @Override
         public void windowClosing(@NotNull WindowEvent event) {
-            ActivePanel activePanel = Bootstrap.getGui().getActivePanel();
-            if (activePanel instanceof MainPanel) {
-                MainPanel mainPanel = (MainPanel) activePanel;
-                NgrokProcessThread thread = mainPanel.getThread();
-                if (thread != null) {
+            event.getWindow().setVisible(false);
+
+            // Exit only after the handlers finished, otherwise System.exit could cut off saving the config
+            Thread thread = new Thread(() -> {
+                NgrokClient client = Bootstrap.getClient();
+                if (client != null) {
                     Bootstrap.LOGGER.info("Closing Ngrok process");
-                    thread.close();
+                    client.getTunnelManager().shutdown(); // Also cancels an agent start that is still pending
                 }
-            }
-
-            Thread thread = new Thread(Bootstrap::handleExit);
+                Bootstrap.handleExit();
+                System.exit(0);
+            });
             thread.setName("ClosingThread");
-            thread.setDaemon(true);
             thread.start();
         }
 
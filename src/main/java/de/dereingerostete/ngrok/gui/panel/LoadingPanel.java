@@ -10,7 +10,7 @@
 package de.dereingerostete.ngrok.gui.panel;
 
 import com.formdev.flatlaf.extras.components.FlatProgressBar;
-import de.dereingerostete.ngrok.util.GUIUtils;
+import de.dereingerostete.ngrok.util.FontRegistry;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
@@ -25,7 +25,7 @@ public class LoadingPanel extends ActivePanel {
         this.infoLabel = new JLabel(info);
         infoLabel.setVerticalAlignment(SwingConstants.BOTTOM);
         infoLabel.setHorizontalAlignment(SwingConstants.CENTER);
-        infoLabel.setFont(GUIUtils.DEFAULT_FONT);
+        infoLabel.setFont(FontRegistry.getDefaultFont());
         infoLabel.setBounds(10, 65, 595, 30);
         add(infoLabel);
 
@@ -39,6 +39,25 @@ public class LoadingPanel extends ActivePanel {
         this.infoLabel.setText(info);
     }
 
+    /**
+     * Shows the progress of a download. Can be called from any thread.
+     *
+     * @param total The total amount of bytes or -1 to show an indeterminate progress
+     */
+    public void setProgress(long bytes, long total) {
+        SwingUtilities.invokeLater(() -> {
+            if (total <= 0) {
+                progressBar.setIndeterminate(true);
+                return;
+            }
+
+            progressBar.setIndeterminate(false);
+            progressBar.setMaximum(1000);
+            progressBar.setValue((int) (bytes * 1000 / total));
+            progressBar.setToolTipText(String.format("%.1f / %.1f MB", bytes / 1048576.0, total / 1048576.0));
+        });
+    }
+
     @Override
     public void updateComponentSize() {
         int mainWidth = getWidth();
@@ -10,22 +10,30 @@
 package de.dereingerostete.ngrok.gui.panel;
 
 import de.dereingerostete.ngrok.Bootstrap;
-import de.dereingerostete.ngrok.client.NgrokClient;
-import de.dereingerostete.ngrok.client.NgrokProcessThread;
+import de.dereingerostete.ngrok.client.Tunnel;
+import de.dereingerostete.ngrok.client.TunnelManager;
+import de.dereingerostete.ngrok.client.TunnelState;
+import de.dereingerostete.ngrok.jfr.UiActionEvent;
+import de.dereingerostete.ngrok.metrics.MetricsSnapshot;
+import de.dereingerostete.ngrok.metrics.TunnelMetrics;
+import de.dereingerostete.ngrok.util.FontRegistry;
 import de.dereingerostete.ngrok.util.GUIUtils;
+import de.dereingerostete.ngrok.util.Schedulers;
 import de.dereingerostete.ngrok.util.config.ConfigUtils;
 import de.dereingerostete.ngrok.util.config.Configuration;
 import de.dereingerostete.ngrok.util.config.ReadOnlyConfig;
 import de.dereingerostete.ngrok.util.config.Theming;
-import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.NumberFormatter;
 import java.awt.*;
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.List;
 import java.util.OptionalInt;
 
 public class MainPanel extends ActivePanel {
@@ -36,7 +44,7 @@ public class MainPanel extends ActivePanel {
     private final @NotNull JLabel statusValue;
     private final @NotNull JLabel folderValue;
     private final @NotNull JLabel ipValue;
-    private @Getter @Nullable NgrokProcessThread thread;
+    private final @NotNull DefaultListModel<Tunnel> tunnelModel;
 
     public MainPanel() {
         setLayout(null);
@@ -47,16 +55,16 @@ public class MainPanel extends ActivePanel {
 
         JLabel statusTitle = new JLabel("Status:");
         statusTitle.setBounds(PADDING, 0, 60, 30);
-        statusTitle.setFont(GUIUtils.BOLD_FONT);
+        statusTitle.setFont(FontRegistry.getBoldFont());
         add(statusTitle);
 
         this.statusValue = new JLabel("Offline");
-        statusValue.setFont(GUIUtils.DEFAULT_FONT);
+        statusValue.setFont(FontRegistry.getDefaultFont());
         statusValue.setBounds(PADDING + 80, 0, 90, 30);
         add(statusValue);
 
         JLabel ipTitle = new JLabel("Ngrok IP:");
-        ipTitle.setFont(GUIUtils.BOLD_FONT);
+        ipTitle.setFont(FontRegistry.getBoldFont());
         ipTitle.setBounds(PADDING, 30, 70, 30);
         add(ipTitle);
 
@@ -64,11 +72,11 @@ public class MainPanel extends ActivePanel {
         ipValue.setBounds(PADDING + 80, 30, 165, 30);
         ipValue.addMouseListener(GUIUtils.createCopyClickListener(ipValue));
         ipValue.setToolTipText("Click to copy");
-        ipValue.setFont(GUIUtils.DEFAULT_FONT);
+        ipValue.setFont(FontRegistry.getDefaultFont());
         add(ipValue);
 
         JLabel optionalTitle = new JLabel("Optional:");
-        optionalTitle.setFont(GUIUtils.BOLD_FONT);
+        optionalTitle.setFont(FontRegistry.getBoldFont());
         optionalTitle.setBounds(PADDING, 100, 70, 30);
         add(optionalTitle);
 
@@ -77,37 +85,37 @@ public class MainPanel extends ActivePanel {
         add(optionalSeparator);
 
         JLabel folderTitle = new JLabel("Minecraft Folder:");
-        folderTitle.setFont(GUIUtils.BOLD_FONT);
+        folderTitle.setFont(FontRegistry.getBoldFont());
         folderTitle.setBounds(PADDING, 140, 135, 30);
         add(folderTitle);
 
         this.folderValue = new JLabel("/");
-        folderValue.setFont(GUIUtils.DEFAULT_FONT);
+        folderValue.setFont(FontRegistry.getDefaultFont());
         folderValue.setBounds(PADDING + 135, 140, 300, 30);
         add(folderValue);
         setFolderPath(configuration.getMinecraftFolder());
 
         JLabel defaultPortTitle = new JLabel("Default Port:");
-        defaultPortTitle.setFont(GUIUtils.BOLD_FONT);
+        defaultPortTitle.setFont(FontRegistry.getBoldFont());
         defaultPortTitle.setBounds(PADDING, 170, 135, 30);
         add(defaultPortTitle);
 
         int defaultPort = configuration.getDefaultPort();
         this.defaultPortValue = new JLabel(String.valueOf(defaultPort));
-        defaultPortValue.setFont(GUIUtils.DEFAULT_FONT);
+        defaultPortValue.setFont(FontRegistry.getDefaultFont());
         defaultPortValue.setBounds(PADDING + 135, 170, 100, 30);
         add(defaultPortValue);
 
         JButton folderButton = new JButton("Set Minecraft folder");
         folderButton.addActionListener(GUIUtils.createFolderSelectListener(this));
         folderButton.setBounds(PADDING, 220, 170, 35);
-        folderButton.setFont(GUIUtils.BUTTON_FONT);
+        folderButton.setFont(FontRegistry.getButtonFont());
         add(folderButton);
 
         JButton defaultPortButton = new JButton("Set default port");
         defaultPortButton.addActionListener(GUIUtils.createDefaultPortListener(this));
         defaultPortButton.setBounds(PADDING, 260, 170, 35);
-        defaultPortButton.setFont(GUIUtils.BUTTON_FONT);
+        defaultPortButton.setFont(FontRegistry.getButtonFont());
         add(defaultPortButton);
 
         NumberFormat format = NumberFormat.getInstance();
@@ -129,90 +137,130 @@ public class MainPanel extends ActivePanel {
         portField.setBounds(65, 5, 90, 30);
         portField.setText(String.valueOf(configuration.getDefaultPort()));
         portField.setHorizontalAlignment(JTextField.CENTER);
-        portField.setFont(GUIUtils.DEFAULT_FONT);
+        portField.setFont(FontRegistry.getDefaultFont());
         portField.setOpaque(false);
+        portField.getDocument().addDocumentListener(new PortFieldListener());
         borderPanel.add(portField);
         //textField.setBounds(getWidth() - PADDING - 100, 0, 100, 30);
 
         JLabel portTitle = new JLabel("Port:");
         portTitle.setBounds(10, 5, 45, 30);
-        portTitle.setFont(GUIUtils.BOLD_FONT);
+        portTitle.setFont(FontRegistry.getBoldFont());
         borderPanel.add(portTitle);
         //portTitle.setBounds(textField.getX() - 50, 0, 40, 30);
 
         this.openPortButton = new JButton("Open port");
         openPortButton.setBounds(getWidth() - PADDING - 160, 45, 160, 35);
-        openPortButton.addActionListener(event -> openTunnel(null));
-        openPortButton.setFont(GUIUtils.BUTTON_FONT);
+        openPortButton.addActionListener(event -> UiActionEvent.record("Open port", () -> openTunnel(null)));
+        openPortButton.setFont(FontRegistry.getButtonFont());
         add(openPortButton);
 
         JButton detectPortButton = new JButton("Detect port");
         detectPortButton.setBounds(getWidth() - PADDING - 160, 85, 160, 35);
-        detectPortButton.setFont(GUIUtils.BUTTON_FONT);
-        detectPortButton.addActionListener(event -> openDetect());
+        detectPortButton.setFont(FontRegistry.getButtonFont());
+        detectPortButton.addActionListener(event -> UiActionEvent.record("Detect port", () -> openDetect(detectPortButton)));
         add(detectPortButton);
 
         JButton openDefaultButton = new JButton("Open default");
         openDefaultButton.setBounds(getWidth() - PADDING - 160, 125, 160, 35);
-        openDefaultButton.addActionListener(event -> openDefault());
-        openDefaultButton.setFont(GUIUtils.BUTTON_FONT);
+        openDefaultButton.addActionListener(event -> UiActionEvent.record("Open default", this::openDefault));
+        openDefaultButton.setFont(FontRegistry.getButtonFont());
         add(openDefaultButton);
 
+        this.tunnelModel = new DefaultListModel<>();
+        JList<Tunnel> tunnelList = new JList<>(tunnelModel);
+        tunnelList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        tunnelList.setCellRenderer(new TunnelCellRenderer());
+        tunnelList.setFont(FontRegistry.getButtonFont());
+        tunnelList.setToolTipText("Select a tunnel to show its IP");
+        tunnelList.addListSelectionListener(event -> {
+            Tunnel selected = tunnelList.getSelectedValue();
+            if (!event.getValueIsAdjusting() && selected != null) {
+                portField.setText(String.valueOf(selected.getPort()));
+            }
+        });
+
+        JScrollPane tunnelPane = new JScrollPane(tunnelList);
+        tunnelPane.setBounds(getWidth() - PADDING - 160, 170, 160, 105);
+        add(tunnelPane);
+
         JLabel authorText = new JLabel("By DerEingerostete");
         authorText.setBounds(getWidth() - 120, 285, 120, 20);
-        authorText.setFont(GUIUtils.BUTTON_FONT.deriveFont(12f));
+        authorText.setFont(FontRegistry.regular(12f));
         authorText.addMouseListener(GUIUtils.createOnClickListener());
         authorText.setToolTipText("I made this :D");
         add(authorText);
+
+        TunnelManager manager = getTunnelManager();
+        manager.addListener(tunnels -> SwingUtilities.invokeLater(() -> updateTunnels(tunnels)));
+        updateTunnels(manager.getTunnels());
     }
 
     @Override
     public void updateComponentSize() {}
 
-    private void openDetect() {
-        if (thread != null && thread.isRunning()) {
-            showRunningWarning();
-            return;
-        }
-
-        try {
-            OptionalInt detectedPort = ConfigUtils.detectMinecraftPort();
-            if (detectedPort.isEmpty()) {
-                GUIUtils.showWarning(this, "No port detected", "No port was detected. " +
-                        "Please make sure you selected the right Minecraft folder or try again.");
-                return;
+    /**
+     * Detects the port in the background, as the detectors may wait up to the detection timeout.
+     * The button is disabled until the detection finished.
+     */
+    private void openDetect(@NotNull JButton detectButton) {
+        detectButton.setEnabled(false);
+        Schedulers.shared().execute(() -> {
+            OptionalInt detection;
+            try {
+                detection = ConfigUtils.detectMinecraftPort();
+            } catch (RuntimeException exception) {
+                Bootstrap.LOGGER.warn("Failed to detect the port of Minecraft", exception);
+                detection = OptionalInt.empty();
             }
 
-            openTunnel(detectedPort.getAsInt());
-        } catch (IOException exception) {
-            Bootstrap.LOGGER.warn("Failed to detect Minecraft port", exception);
-            GUIUtils.showWarning(this, "Unexpected error",
-                    "Failed to detect Minecraft port. Please try again.");
-        }
+            OptionalInt detectedPort = detection;
+            SwingUtilities.invokeLater(() -> {
+                detectButton.setEnabled(true);
+                if (detectedPort.isEmpty()) {
+                    GUIUtils.showWarning(this, "No port detected", "No port was detected. " +
+                            "Please make sure you selected the right Minecraft folder or try again.");
+                    return;
+                }
+
+                int port = detectedPort.getAsInt();
+                if (isOpen(port)) {
+                    showRunningWarning(port);
+                    return;
+                }
+
+                openTunnel(port);
+            });
+        });
     }
 
     private void openDefault() {
-        if (thread != null && thread.isRunning()) {
-            showRunningWarning();
+        Configuration configuration = Bootstrap.getConfiguration();
+        int defaultPort = configuration.getDefaultPort();
+        if (isOpen(defaultPort)) {
+            showRunningWarning(defaultPort);
             return;
         }
 
-        Configuration configuration = Bootstrap.getConfiguration();
-        int defaultPort = configuration.getDefaultPort();
         openTunnel(defaultPort);
     }
 
-    private void showRunningWarning() {
-        GUIUtils.showWarning(this, "Already running", "Ngrok is already running. " +
+    private void showRunningWarning(int port) {
+        GUIUtils.showWarning(this, "Already running", "A tunnel for port " + port + " is already open. " +
                 "Please close it first with the 'Close port' button and then try again.");
     }
 
-    public void openTunnel(@Nullable Integer port) {
-        if (thread != null && thread.isRunning()) {
-            thread.close();
-            return;
-        }
+    private boolean isOpen(int port) {
+        Tunnel tunnel = getTunnelManager().getTunnel(port);
+        return tunnel != null && tunnel.getState() != TunnelState.OFFLINE;
+    }
 
+    /**
+     * Opens a tunnel for the given port.
+     * If no port is given, the port of the text field is used and its tunnel is closed if it is already open.
+     */
+    public void openTunnel(@Nullable Integer port) {
+        boolean toggle = port == null;
         if (port == null) {
             String text = portField.getText();
             if (text.isEmpty()) {
@@ -232,22 +280,41 @@ public class MainPanel extends ActivePanel {
             throw new AssertionError(exception);
         }
 
-        try {
-            NgrokClient client = Bootstrap.getClient();
-            this.thread = client.createTunnel(port, () -> {
-                openPortButton.setText("Open port");
-                setIpText(null);
-            });
-
-            if (thread != null) {
-                openPortButton.setText("Close port");
-                portField.setText(port.toString());
-            } else {
-                askForToken();
+        // Starting and stopping Ngrok may block, so the manager is never called on the event dispatch thread
+        TunnelManager manager = getTunnelManager();
+        boolean close = toggle && manager.getTunnel(port) != null;
+        int tunnelPort = port;
+        Schedulers.shared().execute(() -> {
+            try {
+                if (close) {
+                    manager.closeTunnel(tunnelPort);
+                    return;
+                }
+
+                boolean opened = manager.openTunnel(tunnelPort);
+                SwingUtilities.invokeLater(() -> {
+                    if (opened) portField.setText(String.valueOf(tunnelPort));
+                    else askForToken();
+                });
+            } catch (IOException exception) {
+                Bootstrap.LOGGER.warn("Failed to start Ngrok", exception);
+                SwingUtilities.invokeLater(() -> GUIUtils.showWarning(this, "Unexpected Error",
+                        "Failed to start Ngrok. Please try again."));
             }
-        } catch (IOException exception) {
-            Bootstrap.LOGGER.warn("Failed to start Ngrok", exception);
-            GUIUtils.showWarning(this, "Unexpected Error", "Failed to start Ngrok. Please try again.");
+        });
+    }
+
+    /**
+     * Called when a LAN world was opened while the latest.log is watched
+     */
+    public void handleDetectedPort(int port) {
+        if (isOpen(port)) return;
+
+        if (Bootstrap.getReadOnlyConfig().isAutoOpenDetectedPort()) {
+            Bootstrap.LOGGER.info("Opening tunnel for detected port " + port);
+            openTunnel(port);
+        } else {
+            portField.setText(String.valueOf(port));
         }
     }
 
@@ -263,14 +330,9 @@ public class MainPanel extends ActivePanel {
             token = token.substring(tokenIndex + 14);
         }
 
-        try {
-            Configuration configuration = Bootstrap.getConfiguration();
-            configuration.setAuthToken(token);
-            configuration.save(Bootstrap.getConfigFile());
-        } catch (IOException exception) {
-            Bootstrap.LOGGER.warn("Failed to save config", exception);
-            GUIUtils.showWarning(this, "Unexpected exception", "Failed to save configuration. Please try again later.");
-        }
+        Configuration configuration = Bootstrap.getConfiguration();
+        configuration.setAuthToken(token);
+        Bootstrap.getConfigStore().save();
 
         JOptionPane.showMessageDialog(this, "Successfully saved the auth token. " +
                 "Please press the same button again to open the port.", "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -285,12 +347,50 @@ public class MainPanel extends ActivePanel {
         this.folderValue.setText(displayPath);
     }
 
+    private void updateTunnels(@NotNull List<Tunnel> tunnels) {
+        tunnelModel.clear();
+        tunnels.forEach(tunnelModel::addElement);
+        updateSelectedTunnel();
+    }
+
+    private void updateSelectedTunnel() {
+        Tunnel tunnel = null;
+        try {
+            String text = portField.getText();
+            if (!text.isEmpty()) tunnel = getTunnelManager().getTunnel(Integer.parseInt(text));
+        } catch (NumberFormatException ignored) {}
+
+        openPortButton.setText(tunnel == null ? "Open port" : "Close port");
+        setIpText(tunnel == null ? null : tunnel.getUrl());
+        statusValue.setText(getStateName(tunnel == null ? TunnelState.OFFLINE : tunnel.getState()));
+    }
+
+    @NotNull
+    private static String getStateName(@NotNull TunnelState state) {
+        switch (state) {
+            case STARTING:
+                return "Starting";
+            case ONLINE:
+                return "Online";
+            case DEGRADED:
+                return "Degraded";
+            case DOWN:
+                return "Down";
+            default:
+                return "Offline";
+        }
+    }
+
+    @NotNull
+    private static TunnelManager getTunnelManager() {
+        return Bootstrap.getClient().getTunnelManager();
+    }
+
     public void setIpText(@Nullable String text) {
         if (text == null) {
             ipValue.setText("None");
             ipValue.setCursor(null);
             ipValue.setForeground(folderValue.getForeground());
-            statusValue.setText("Offline");
         } else {
             ReadOnlyConfig config = Bootstrap.getReadOnlyConfig();
             Theming theming = config.getTheming();
@@ -298,8 +398,56 @@ public class MainPanel extends ActivePanel {
             ipValue.setText(text);
             ipValue.setForeground(Color.decode(theming.getHyperlinkColor()));
             ipValue.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-            statusValue.setText("Online");
         }
     }
 
-}
\ No newline at end of file
+    private class PortFieldListener implements DocumentListener {
+
+        @Override
+        public void insertUpdate(@NotNull DocumentEvent event) {
+            updateSelectedTunnel();
+        }
+
+        @Override
+        public void removeUpdate(@NotNull DocumentEvent event) {
+            updateSelectedTunnel();
+        }
+
+        @Override
+        public void changedUpdate(@NotNull DocumentEvent event) {
+            updateSelectedTunnel();
+        }
+
+    }
+
+    private static class TunnelCellRenderer extends DefaultListCellRenderer {
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (value instanceof Tunnel) {
+                Tunnel tunnel = (Tunnel) value;
+                setText(tunnel.getPort() + " - " + getStateName(tunnel.getState()));
+
+                TunnelMetrics metrics = getTunnelManager().getMetrics().get(tunnel.getName());
+                if (metrics != null) {
+                    MetricsSnapshot snapshot = metrics.snapshot();
+                    String tooltip = "Connections: " + snapshot.getOpenConnections() + " open, " +
+                            snapshot.getConnections() + " total";
+                    if (snapshot.getRejectedConnections() > 0) {
+                        tooltip += ", " + snapshot.getRejectedConnections() + " rejected";
+                    }
+                    if (snapshot.getLatency() != -1) {
+                        tooltip += " | Latency: " + snapshot.getLatency() + "ms (avg. " +
+                                snapshot.getAverageLatency() + "ms)";
+                    }
+                    setToolTipText(tooltip);
+                }
+            }
+            return this;
+        }
+
+    }
+
+}
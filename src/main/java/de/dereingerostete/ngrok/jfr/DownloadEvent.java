@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("de.dereingerostete.ngrok.DownloadEvent")
+@Label("Download")
+@Category({"Ngrok Minecraft GUI", "Network"})
+@Description("A file downloaded by the application")
+public class DownloadEvent extends Event {
+    @Label("URL")
+    public String url;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+}
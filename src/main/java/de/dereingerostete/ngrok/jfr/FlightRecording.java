@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.jfr;
+
+import jdk.jfr.Recording;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Continuous JDK Flight Recorder recording of the application.
+ * The recording is kept on disk for a limited time and written to the recordings folder on exit.
+ */
+public class FlightRecording {
+    private static @Nullable Recording recording;
+
+    public static synchronized void start(@NotNull File dataFolder) throws IOException {
+        if (recording != null) return;
+
+        File folder = new File(dataFolder, "recordings");
+        if (!folder.exists() && !folder.mkdirs()) throw new IOException("Failed to create recordings folder");
+
+        try {
+            jdk.jfr.Configuration configuration = jdk.jfr.Configuration.getConfiguration("default");
+            Recording newRecording = new Recording(configuration);
+            newRecording.setName("NgrokGUI");
+            newRecording.setToDisk(true);
+            newRecording.setMaxAge(Duration.ofHours(6));
+            newRecording.setMaxSize(64L * 1024 * 1024);
+            newRecording.setDumpOnExit(true); // Also written if the JVM exits before stop() is called
+
+            String timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+            File destination = new File(folder, "ngrok-gui-" + timestamp + ".jfr");
+            newRecording.setDestination(destination.toPath());
+            newRecording.start();
+
+            recording = newRecording;
+            LOGGER.info("Started flight recording. It will be written to " + destination.getName());
+        } catch (ParseException | IllegalStateException | SecurityException exception) {
+            throw new IOException("Failed to start flight recording", exception);
+        }
+    }
+
+    /**
+     * Stops the recording and writes it to its destination
+     */
+    public static synchronized void stop() {
+        if (recording == null) return;
+
+        LOGGER.info("Stopping flight recording");
+        recording.stop();
+        recording.close();
+        recording = null;
+    }
+
+}
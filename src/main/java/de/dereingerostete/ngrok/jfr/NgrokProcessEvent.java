@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("de.dereingerostete.ngrok.NgrokProcessEvent")
+@Label("Ngrok Process")
+@Category({"Ngrok Minecraft GUI", "Ngrok"})
+@Description("Lifetime of a Ngrok process from spawn to exit")
+public class NgrokProcessEvent extends Event {
+    @Label("Command")
+    public String command;
+
+    @Label("Process Id")
+    public long pid;
+
+    @Label("Exit Code")
+    public int exitCode;
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.NotNull;
+
+@Name("de.dereingerostete.ngrok.UiActionEvent")
+@Label("UI Action")
+@Category({"Ngrok Minecraft GUI", "GUI"})
+@Description("An action run on the event dispatch thread")
+public class UiActionEvent extends Event {
+    @Label("Action")
+    public String action;
+
+    /**
+     * Runs the action and records its duration
+     */
+    public static void record(@NotNull String action, @NotNull Runnable runnable) {
+        UiActionEvent event = new UiActionEvent();
+        event.begin();
+        try {
+            runnable.run();
+        } finally {
+            event.action = action;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.metrics;
+
+/**
+ * Rolling window of the last latency samples in milliseconds
+ */
+public class LatencyWindow {
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    public LatencyWindow(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long latency) {
+        samples[next] = latency;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) size++;
+    }
+
+    /**
+     * @return the most recent sample or -1 if there is none
+     */
+    public synchronized long getLast() {
+        if (size == 0) return -1;
+        return samples[(next - 1 + samples.length) % samples.length];
+    }
+
+    /**
+     * @return the average of the window or -1 if there are no samples
+     */
+    public synchronized long getAverage() {
+        if (size == 0) return -1;
+
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += samples[i];
+        }
+        return sum / size;
+    }
+
+    /**
+     * @return the highest sample of the window or -1 if there are no samples
+     */
+    public synchronized long getMax() {
+        long max = -1;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link TunnelMetrics} of every tunnel by its name
+ */
+public class MetricsRegistry {
+    private final @NotNull Map<String, TunnelMetrics> metrics;
+
+    public MetricsRegistry() {
+        this.metrics = new ConcurrentHashMap<>();
+    }
+
+    @NotNull
+    public TunnelMetrics getOrCreate(@NotNull String tunnelName) {
+        return metrics.computeIfAbsent(tunnelName, TunnelMetrics::new);
+    }
+
+    @Nullable
+    public TunnelMetrics get(@NotNull String tunnelName) {
+        return metrics.get(tunnelName);
+    }
+
+    public void remove(@NotNull String tunnelName) {
+        metrics.remove(tunnelName);
+    }
+
+    @NotNull
+    public List<MetricsSnapshot> snapshot() {
+        List<MetricsSnapshot> snapshots = new ArrayList<>(metrics.size());
+        for (TunnelMetrics tunnelMetrics : metrics.values()) {
+            snapshots.add(tunnelMetrics.snapshot());
+        }
+        return snapshots;
+    }
+
+}
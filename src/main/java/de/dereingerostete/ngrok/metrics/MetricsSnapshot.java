@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.metrics;
+
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Point in time copy of the {@link TunnelMetrics} of a tunnel. Durations are in milliseconds.
+ */
+@Value
+public class MetricsSnapshot {
+    @NotNull String tunnelName;
+    long connections;
+    long openConnections;
+    long rejectedConnections; // Refused by the connection limits of the relay
+    long bytesIn;
+    long bytesOut;
+    long durationP50;
+    long durationP90;
+    long durationP99;
+    long latency; // Last health check round trip or -1 if unknown
+    long averageLatency; // -1 if unknown
+
+}
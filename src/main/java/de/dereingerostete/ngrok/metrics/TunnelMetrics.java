@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.metrics;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Traffic metrics of a single tunnel.
+ * Connections observed by this process are counted directly. If none were observed,
+ * the values last reported by the metrics of the Ngrok agent API are used instead.
+ */
+public class TunnelMetrics {
+    private static final int LATENCY_SAMPLES = 20;
+    private final @Getter @NotNull String tunnelName;
+    private final @NotNull LongAdder connections;
+    private final @NotNull AtomicLong openConnections;
+    private final @NotNull LongAdder rejectedConnections;
+    private final @NotNull LongAdder bytesIn;
+    private final @NotNull LongAdder bytesOut;
+    private final @NotNull Histogram durations; // Connection durations in milliseconds
+    private final @Getter @NotNull LatencyWindow latency; // Round trip times of the health checks
+
+    // Last values reported by the agent
+    private volatile long agentConnections;
+    private volatile long agentOpenConnections;
+    private volatile long agentP50;
+    private volatile long agentP90;
+    private volatile long agentP99;
+
+    public TunnelMetrics(@NotNull String tunnelName) {
+        this.tunnelName = tunnelName;
+        this.connections = new LongAdder();
+        this.openConnections = new AtomicLong();
+        this.rejectedConnections = new LongAdder();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+        this.durations = new Histogram();
+        this.latency = new LatencyWindow(LATENCY_SAMPLES);
+    }
+
+    public void connectionOpened() {
+        connections.increment();
+        openConnections.incrementAndGet();
+    }
+
+    public void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    public void connectionClosed(long durationNanos) {
+        openConnections.decrementAndGet();
+        durations.record(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Updates the values reported by the agent from the "conns" object of the tunnel metrics
+     */
+    public void updateFromAgent(@NotNull JSONObject conns) {
+        agentConnections = conns.optLong("count", agentConnections);
+        agentOpenConnections = conns.optLong("gauge", agentOpenConnections);
+
+        // The agent reports durations in nanoseconds
+        agentP50 = TimeUnit.NANOSECONDS.toMillis((long) conns.optDouble("p50", 0));
+        agentP90 = TimeUnit.NANOSECONDS.toMillis((long) conns.optDouble("p90", 0));
+        agentP99 = TimeUnit.NANOSECONDS.toMillis((long) conns.optDouble("p99", 0));
+    }
+
+    @NotNull
+    public MetricsSnapshot snapshot() {
+        long observed = connections.sum();
+        if (observed == 0) {
+            return new MetricsSnapshot(tunnelName, agentConnections, agentOpenConnections, rejectedConnections.sum(),
+                    bytesIn.sum(), bytesOut.sum(), agentP50, agentP90, agentP99, latency.getLast(), latency.getAverage());
+        }
+
+        return new MetricsSnapshot(tunnelName, observed, openConnections.get(), rejectedConnections.sum(),
+                bytesIn.sum(), bytesOut.sum(),
+                durations.getPercentile(50), durations.getPercentile(90), durations.getPercentile(99),
+                latency.getLast(), latency.getAverage());
+    }
+
+}
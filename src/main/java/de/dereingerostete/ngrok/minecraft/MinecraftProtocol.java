@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.minecraft;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for the parts of the Minecraft protocol needed for a Server List Ping
+ */
+public class MinecraftProtocol {
+    public static final int STATE_STATUS = 1;
+    public static final int STATE_LOGIN = 2;
+    private static final int PROTOCOL_VERSION_PING = -1;
+    private static final int MAX_VARINT_BYTES = 5;
+    private static final int MAX_HANDSHAKE_LENGTH = 1024; // Host names are limited to 255 characters
+    private static final int LEGACY_PING = 0xFE;
+
+    public static int getVarIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static void writeVarInt(@NotNull ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a VarInt without consuming the buffer if it is incomplete
+     *
+     * @return the value or null if the buffer does not contain the whole VarInt yet
+     * @throws IOException if the VarInt is longer than five bytes
+     */
+    @Nullable
+    public static Integer readVarInt(@NotNull ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            if (!buffer.hasRemaining()) {
+                buffer.position(start);
+                return null;
+            }
+
+            byte current = buffer.get();
+            value |= (current & 0x7F) << (7 * i);
+            if ((current & 0x80) == 0) return value;
+        }
+        throw new IOException("VarInt is too big");
+    }
+
+    /**
+     * Creates a handshake packet followed by a status request, ready to be written to a server
+     *
+     * @param host The host name the client claims to connect to
+     * @param port The port the client claims to connect to
+     */
+    @NotNull
+    public static ByteBuffer createStatusRequest(@NotNull String host, int port) {
+        byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+        int handshakeLength = getVarIntSize(0x00)
+                + getVarIntSize(PROTOCOL_VERSION_PING)
+                + getVarIntSize(hostBytes.length) + hostBytes.length
+                + Short.BYTES
+                + getVarIntSize(STATE_STATUS);
+
+        ByteBuffer buffer = ByteBuffer.allocate(getVarIntSize(handshakeLength) + handshakeLength + 2);
+        writeVarInt(buffer, handshakeLength);
+        writeVarInt(buffer, 0x00); // Handshake packet id
+        writeVarInt(buffer, PROTOCOL_VERSION_PING);
+        writeVarInt(buffer, hostBytes.length);
+        buffer.put(hostBytes);
+        buffer.putShort((short) port);
+        writeVarInt(buffer, STATE_STATUS);
+
+        writeVarInt(buffer, 1); // Status request packet length
+        writeVarInt(buffer, 0x00); // Status request packet id
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the server address field of a handshake packet without modifying the buffer
+     *
+     * @param buffer The first bytes sent by the client in read mode
+     * @return the address the client connected to, an empty string for a legacy ping
+     *         or null if the handshake was not fully received yet
+     * @throws IOException if the bytes are not a valid handshake
+     */
+    @Nullable
+    public static String readHandshakeAddress(@NotNull ByteBuffer buffer) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        if (view.hasRemaining() && (view.get(view.position()) & 0xFF) == LEGACY_PING) return "";
+
+        Integer packetLength = readVarInt(view);
+        if (packetLength == null) return null;
+        if (packetLength <= 0 || packetLength > MAX_HANDSHAKE_LENGTH) {
+            throw new IOException("Invalid handshake length: " + packetLength);
+        }
+        if (view.remaining() < packetLength) return null;
+
+        view.limit(view.position() + packetLength);
+        Integer packetId = readVarInt(view);
+        if (packetId == null || packetId != 0x00) throw new IOException("Unexpected packet id: " + packetId);
+
+        Integer protocolVersion = readVarInt(view);
+        Integer addressLength = readVarInt(view);
+        if (protocolVersion == null || addressLength == null || addressLength < 0 || addressLength > view.remaining()) {
+            throw new IOException("Invalid handshake");
+        }
+
+        byte[] address = new byte[addressLength];
+        view.get(address);
+        return new String(address, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tries to read a status response from the received bytes
+     *
+     * @param buffer The received bytes in read mode, starting at the beginning of the response
+     * @return the JSON of the response or null if it was not fully received yet
+     * @throws IOException if the bytes are not a valid status response
+     */
+    @Nullable
+    public static String readStatusResponse(@NotNull ByteBuffer buffer) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        Integer packetLength = readVarInt(view);
+        if (packetLength == null) return null;
+        if (packetLength <= 0) throw new IOException("Invalid packet length: " + packetLength);
+        if (view.remaining() < packetLength) return null;
+
+        view.limit(view.position() + packetLength);
+        Integer packetId = readVarInt(view);
+        if (packetId == null || packetId != 0x00) throw new IOException("Unexpected packet id: " + packetId);
+
+        Integer jsonLength = readVarInt(view);
+        if (jsonLength == null || jsonLength < 0 || jsonLength > view.remaining()) {
+            throw new IOException("Invalid status length: " + jsonLength);
+        }
+
+        byte[] json = new byte[jsonLength];
+        view.get(json);
+        return new String(json, StandardCharsets.UTF_8);
+    }
+
+}
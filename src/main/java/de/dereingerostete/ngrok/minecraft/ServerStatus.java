@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.minecraft;
+
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+
+/**
+ * The answer of a Minecraft server to a Server List Ping
+ */
+@Value
+public class ServerStatus {
+    @NotNull InetSocketAddress address;
+    @NotNull String motd;
+    @NotNull String version;
+    int protocol;
+    int onlinePlayers;
+    int maxPlayers;
+    long latency; // Milliseconds between connecting and receiving the status
+
+    @NotNull
+    public static ServerStatus fromJson(@NotNull InetSocketAddress address, @NotNull JSONObject json, long latency) {
+        JSONObject version = json.optJSONObject("version");
+        JSONObject players = json.optJSONObject("players");
+
+        return new ServerStatus(address,
+                readText(json.opt("description")),
+                version == null ? "Unknown" : version.optString("name", "Unknown"),
+                version == null ? -1 : version.optInt("protocol", -1),
+                players == null ? 0 : players.optInt("online"),
+                players == null ? 0 : players.optInt("max"),
+                latency);
+    }
+
+    /**
+     * Flattens a chat component into plain text without formatting codes
+     */
+    @NotNull
+    private static String readText(Object component) {
+        StringBuilder builder = new StringBuilder();
+        appendText(builder, component);
+        return builder.toString().replaceAll("§.", "").trim();
+    }
+
+    private static void appendText(@NotNull StringBuilder builder, Object component) {
+        if (component instanceof String) {
+            builder.append(component);
+        } else if (component instanceof JSONObject) {
+            JSONObject object = (JSONObject) component;
+            builder.append(object.optString("text"));
+            appendText(builder, object.optJSONArray("extra"));
+        } else if (component instanceof JSONArray) {
+            for (Object child : (JSONArray) component) {
+                appendText(builder, child);
+            }
+        }
+    }
+
+}
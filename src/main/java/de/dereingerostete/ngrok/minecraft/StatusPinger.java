@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.minecraft;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends Server List Pings to many addresses at once using non-blocking sockets on a single selector.
+ * Addresses that refuse the connection, time out or answer with something other than a status response are skipped.
+ */
+public class StatusPinger {
+    private static final int INITIAL_READ_SIZE = 4096;
+    private static final int MAX_RESPONSE_SIZE = 1024 * 1024; // Favicons are included in the response
+    private final int maxInFlight;
+    private final long timeoutNanos;
+
+    /**
+     * @param maxInFlight The max. amount of simultaneously open sockets
+     * @param timeoutMillis The time in milliseconds a single address may take to answer
+     */
+    public StatusPinger(int maxInFlight, long timeoutMillis) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+        this.maxInFlight = maxInFlight;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Pings all addresses and returns the status of every Minecraft server found, in the order they answered
+     *
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    @NotNull
+    public List<ServerStatus> ping(@NotNull Iterator<InetSocketAddress> addresses) throws IOException {
+        List<ServerStatus> results = new ArrayList<>();
+        int inFlight = 0; // Probes that are not closed yet
+        try (Selector selector = Selector.open()) {
+            try {
+                while (addresses.hasNext() || inFlight > 0) {
+                    while (inFlight < maxInFlight && addresses.hasNext()) {
+                        if (connect(selector, addresses.next())) inFlight++;
+                    }
+
+                    selector.select(10);
+                    if (Thread.interrupted()) throw new InterruptedIOException("Status ping was interrupted");
+
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        if (!handle(key, results) && ((Probe) key.attachment()).close()) inFlight--;
+                    }
+
+                    // Every probe has its own deadline, a slow probe must not keep expired ones open
+                    long now = System.nanoTime();
+                    for (SelectionKey key : selector.keys()) {
+                        Probe probe = (Probe) key.attachment();
+                        if (now - probe.deadline >= 0 && probe.close()) inFlight--;
+                    }
+                }
+            } finally {
+                for (SelectionKey key : selector.keys()) ((Probe) key.attachment()).close();
+            }
+        }
+        return results;
+    }
+
+    @NotNull
+    public List<ServerStatus> ping(@NotNull List<InetSocketAddress> addresses) throws IOException {
+        return ping(addresses.iterator());
+    }
+
+    /**
+     * @return true if a probe was registered for the address
+     */
+    private boolean connect(@NotNull Selector selector, @NotNull InetSocketAddress address) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+
+            boolean connected = channel.connect(address);
+            Probe probe = new Probe(address, channel, System.nanoTime() + timeoutNanos);
+            probe.key = channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, probe);
+            return true;
+        } catch (IOException exception) {
+            if (channel != null) closeQuietly(channel);
+            return false;
+        }
+    }
+
+    /**
+     * @return false if the probe is finished and the connection can be closed
+     */
+    private boolean handle(@NotNull SelectionKey key, @NotNull List<ServerStatus> results) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Probe probe = (Probe) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                ByteBuffer request = probe.getRequest();
+                channel.write(request);
+                if (!request.hasRemaining()) key.interestOps(SelectionKey.OP_READ);
+            } else if (key.isReadable()) {
+                probe.ensureResponseSpace();
+                if (channel.read(probe.response) == -1) return false;
+
+                String json = MinecraftProtocol.readStatusResponse(probe.response.duplicate().flip());
+                if (json == null) return true;
+
+                long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - probe.start);
+                results.add(ServerStatus.fromJson(probe.address, new JSONObject(json), latency));
+                return false;
+            }
+            return true;
+        } catch (IOException | JSONException exception) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(@NotNull Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    private static class Probe {
+        private final @NotNull InetSocketAddress address;
+        private final @NotNull SocketChannel channel;
+        private ByteBuffer request; // Only created once connected as most ports are closed
+        private ByteBuffer response;
+        private final long start;
+        private final long deadline; // System.nanoTime() after which the probe is given up
+        private SelectionKey key;
+        private boolean closed;
+
+        private Probe(@NotNull InetSocketAddress address, @NotNull SocketChannel channel, long deadline) {
+            this.address = address;
+            this.channel = channel;
+            this.start = System.nanoTime();
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the probe was open until now
+         */
+        private boolean close() {
+            if (closed) return false;
+            closed = true;
+            if (key != null) key.cancel();
+            closeQuietly(channel);
+            return true;
+        }
+
+        @NotNull
+        private ByteBuffer getRequest() {
+            if (request == null) request = MinecraftProtocol.createStatusRequest(address.getHostString(), address.getPort());
+            return request;
+        }
+
+        private void ensureResponseSpace() throws IOException {
+            if (response == null) {
+                response = ByteBuffer.allocate(INITIAL_READ_SIZE);
+                return;
+            } else if (response.hasRemaining()) return;
+
+            int capacity = response.capacity();
+            if (capacity >= MAX_RESPONSE_SIZE) throw new IOException("Status response is too big");
+
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(capacity * 2, MAX_RESPONSE_SIZE));
+            larger.put(response.flip());
+            response = larger;
+        }
+
+    }
+
+}
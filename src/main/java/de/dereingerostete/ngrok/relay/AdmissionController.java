@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the relayed connections and the bandwidth used to send data to the players.
+ * Limits of 0 or less are disabled.
+ */
+public class AdmissionController {
+    private final int maxConnections;
+    private final int maxConnectionsPerAddress;
+    private final long bandwidthPerConnection;
+    private final long burst;
+    private final @Nullable TokenBucket bandwidth;
+    private final @NotNull AtomicInteger connections;
+    private final @NotNull Map<InetAddress, Integer> addressConnections;
+    private final @NotNull LongAdder rejected;
+    private final @NotNull LongAdder throttled;
+
+    /**
+     * @param maxConnections The max. amount of relayed connections
+     * @param maxConnectionsPerAddress The max. amount of relayed connections of a single player address
+     * @param bandwidth The max. bytes per second sent to all players
+     * @param bandwidthPerConnection The max. bytes per second sent to a single player
+     * @param burst The bytes that may be sent at once after the limit was not reached for a while
+     */
+    public AdmissionController(int maxConnections, int maxConnectionsPerAddress,
+                               long bandwidth, long bandwidthPerConnection, long burst) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.bandwidthPerConnection = bandwidthPerConnection;
+        this.burst = burst;
+        this.bandwidth = bandwidth > 0 ? new TokenBucket(bandwidth, burst) : null;
+        this.connections = new AtomicInteger();
+        this.addressConnections = new ConcurrentHashMap<>();
+        this.rejected = new LongAdder();
+        this.throttled = new LongAdder();
+    }
+
+    /**
+     * Admits a new connection. Every admitted connection has to be released with {@link #release(InetAddress)}.
+     *
+     * @return false if a limit was reached and the connection has to be closed
+     */
+    public boolean tryAdmit(@NotNull InetAddress address) {
+        while (true) {
+            int current = connections.get();
+            if (maxConnections > 0 && current >= maxConnections) {
+                rejected.increment();
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) break;
+        }
+
+        if (maxConnectionsPerAddress <= 0) return true;
+
+        boolean[] admitted = {false};
+        addressConnections.compute(address, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxConnectionsPerAddress) return count;
+
+            admitted[0] = true;
+            return current + 1;
+        });
+
+        if (!admitted[0]) {
+            connections.decrementAndGet();
+            rejected.increment();
+        }
+        return admitted[0];
+    }
+
+    public void release(@NotNull InetAddress address) {
+        connections.decrementAndGet();
+        if (maxConnectionsPerAddress <= 0) return;
+
+        addressConnections.computeIfPresent(address, (key, count) -> count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * @return a bucket limiting the bandwidth of a single connection or null if it is not limited
+     */
+    @Nullable
+    public TokenBucket createConnectionBucket() {
+        return bandwidthPerConnection > 0 ? new TokenBucket(bandwidthPerConnection, burst) : null;
+    }
+
+    /**
+     * Consumes bytes sent to a player from the connection and the global limit
+     *
+     * @return the time in nanoseconds the connection has to wait before sending more data
+     */
+    public long consume(@Nullable TokenBucket connectionBucket, long bytes) {
+        long delay = 0;
+        if (connectionBucket != null) delay = connectionBucket.consume(bytes);
+        if (bandwidth != null) delay = Math.max(delay, bandwidth.consume(bytes));
+
+        if (delay > 0) throttled.increment();
+        return delay;
+    }
+
+    public boolean isLimitingBandwidth() {
+        return bandwidth != null || bandwidthPerConnection > 0;
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return the amount of connections closed because a limit was reached
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return how often connections were paused because of the bandwidth limit
+     */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+}
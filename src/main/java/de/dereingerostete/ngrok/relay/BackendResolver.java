@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Chooses the server a relayed connection is forwarded to
+ */
+@FunctionalInterface
+public interface BackendResolver {
+
+    /**
+     * @param remoteAddress The address of the player
+     * @param initialData The bytes received from the player so far in read mode, must not be modified.
+     *                    Always empty if {@link #needsInitialData()} returns false.
+     * @return the address of the server or null if more data is required to decide
+     * @throws IOException if the connection should be closed
+     */
+    @Nullable
+    InetSocketAddress resolve(@NotNull InetSocketAddress remoteAddress, @NotNull ByteBuffer initialData) throws IOException;
+
+    /**
+     * @return true if the first bytes sent by the player are required to resolve the server
+     */
+    default boolean needsInitialData() {
+        return false;
+    }
+
+    @NotNull
+    static BackendResolver fixed(@NotNull InetSocketAddress address) {
+        return (remoteAddress, initialData) -> address;
+    }
+
+}
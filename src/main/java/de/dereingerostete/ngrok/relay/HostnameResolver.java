@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import de.dereingerostete.ngrok.metrics.Histogram;
+import de.dereingerostete.ngrok.minecraft.MinecraftProtocol;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Routes connections by the server address players entered, which is sent in the handshake packet.
+ * This allows a single tunnel to serve several servers. Only the handshake is inspected,
+ * afterwards the relay passes the bytes through unchanged.
+ */
+public class HostnameResolver implements BackendResolver {
+    private final @NotNull Map<String, InetSocketAddress> routes;
+    private final @NotNull InetSocketAddress fallback;
+    private final @Getter @NotNull Histogram routingTimes; // Nanoseconds to parse and route a handshake
+
+    /**
+     * @param routes The servers by the lower case host name
+     * @param fallback The server of unknown host names and legacy pings
+     */
+    public HostnameResolver(@NotNull Map<String, InetSocketAddress> routes, @NotNull InetSocketAddress fallback) {
+        this.routes = Map.copyOf(routes);
+        this.fallback = fallback;
+        this.routingTimes = new Histogram();
+    }
+
+    /**
+     * Creates the routes from the configuration, the servers are either a port on this machine or "host:port"
+     */
+    @NotNull
+    public static HostnameResolver fromConfig(@NotNull Map<String, ?> config, @NotNull InetSocketAddress fallback) {
+        Map<String, InetSocketAddress> routes = new HashMap<>();
+        for (Map.Entry<String, ?> entry : config.entrySet()) {
+            InetSocketAddress address = parseAddress(String.valueOf(entry.getValue()));
+            if (address == null) LOGGER.warn("Invalid server of route " + entry.getKey() + ": " + entry.getValue());
+            else routes.put(normalize(entry.getKey()), address);
+        }
+        return new HostnameResolver(routes, fallback);
+    }
+
+    @Override
+    public boolean needsInitialData() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public InetSocketAddress resolve(@NotNull InetSocketAddress remoteAddress, @NotNull ByteBuffer initialData) throws IOException {
+        long start = System.nanoTime();
+        String host = MinecraftProtocol.readHandshakeAddress(initialData);
+        if (host == null) return null;
+
+        InetSocketAddress address = routes.getOrDefault(normalize(host), fallback);
+        routingTimes.record(System.nanoTime() - start);
+        return address;
+    }
+
+    /**
+     * Removes the suffixes added by mod loaders (e.g. "\0FML2\0") and the trailing dot of fully qualified names
+     */
+    @NotNull
+    static String normalize(@NotNull String host) {
+        int index = host.indexOf('\0');
+        if (index != -1) host = host.substring(0, index);
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    @Nullable
+    private static InetSocketAddress parseAddress(@NotNull String value) {
+        int index = value.lastIndexOf(':');
+        try {
+            if (index == -1) return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(value.trim()));
+            return new InetSocketAddress(value.substring(0, index), Integer.parseInt(value.substring(index + 1)));
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+}
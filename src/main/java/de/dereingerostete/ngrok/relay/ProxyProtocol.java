@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Parser for the binary PROXY protocol header (version 2) Ngrok sends with "proxy_proto: 2".
+ * The header contains the real address of the player, which is otherwise hidden behind the agent.
+ */
+public class ProxyProtocol {
+    private static final byte[] SIGNATURE = {0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A};
+    private static final int HEADER_LENGTH = 16;
+    private static final int COMMAND_LOCAL = 0x0;
+    private static final int COMMAND_PROXY = 0x1;
+    private static final int FAMILY_TCP4 = 0x11;
+    private static final int FAMILY_TCP6 = 0x21;
+
+    /**
+     * Reads the header from the start of the buffer without modifying it
+     *
+     * @param buffer The received bytes in read mode
+     * @return the header or null if it was not fully received yet
+     * @throws IOException if the bytes do not start with a valid header
+     */
+    @Nullable
+    public static Header read(@NotNull ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int available = buffer.remaining();
+        for (int i = 0; i < Math.min(available, SIGNATURE.length); i++) {
+            if (buffer.get(start + i) != SIGNATURE[i]) throw new IOException("Missing PROXY protocol header");
+        }
+        if (available < HEADER_LENGTH) return null;
+
+        int versionCommand = buffer.get(start + 12) & 0xFF;
+        if (versionCommand >> 4 != 2) throw new IOException("Unsupported PROXY protocol version: " + (versionCommand >> 4));
+
+        int family = buffer.get(start + 13) & 0xFF;
+        int length = buffer.getShort(start + 14) & 0xFFFF;
+        if (available < HEADER_LENGTH + length) return null;
+
+        int command = versionCommand & 0x0F;
+        int totalLength = HEADER_LENGTH + length;
+        if (command == COMMAND_LOCAL) return new Header(totalLength, null);
+        if (command != COMMAND_PROXY) throw new IOException("Unknown PROXY protocol command: " + command);
+
+        int addressLength;
+        if (family == FAMILY_TCP4) addressLength = 4;
+        else if (family == FAMILY_TCP6) addressLength = 16;
+        else return new Header(totalLength, null); // Unsupported family, the address is ignored
+        if (length < addressLength * 2 + 4) throw new IOException("PROXY protocol header is too short");
+
+        byte[] sourceAddress = new byte[addressLength];
+        for (int i = 0; i < addressLength; i++) {
+            sourceAddress[i] = buffer.get(start + HEADER_LENGTH + i);
+        }
+        int sourcePort = buffer.getShort(start + HEADER_LENGTH + addressLength * 2) & 0xFFFF;
+
+        InetSocketAddress source = new InetSocketAddress(InetAddress.getByAddress(sourceAddress), sourcePort);
+        return new Header(totalLength, source);
+    }
+
+    @Value
+    public static class Header {
+        int length; // Length of the whole header including the address block
+        @Nullable InetSocketAddress sourceAddress; // Null if the connection was not proxied
+    }
+
+}
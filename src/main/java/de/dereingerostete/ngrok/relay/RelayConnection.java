@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import de.dereingerostete.ngrok.metrics.TunnelMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * A single relayed connection between a player and a server.
+ * Apart from the getters, all methods are only called by the worker thread of the connection.
+ */
+public class RelayConnection implements RelayWorker.Handler {
+    private final @NotNull RelayListener listener;
+    private final @NotNull RelayWorker worker;
+    private final @NotNull SocketChannel client;
+    private final @NotNull BufferPool bufferPool;
+    private final @NotNull AdmissionController admission;
+    private final @NotNull Flow upstream; // Player to server
+    private final @NotNull Flow downstream; // Server to player
+    private final long startTime;
+    private @Nullable SocketChannel backend;
+    private @Nullable SelectionKey clientKey;
+    private @Nullable SelectionKey backendKey;
+    private volatile @Nullable InetSocketAddress remoteAddress;
+    private @Nullable TokenBucket bandwidth;
+    private boolean admitted;
+    private boolean headerRead;
+    private boolean connected;
+    private boolean closed;
+
+    RelayConnection(@NotNull RelayListener listener, @NotNull RelayWorker worker, @NotNull SocketChannel client,
+                    @NotNull BufferPool bufferPool, @NotNull AdmissionController admission) {
+        this.listener = listener;
+        this.worker = worker;
+        this.client = client;
+        this.bufferPool = bufferPool;
+        this.admission = admission;
+        this.upstream = new Flow();
+        this.downstream = new Flow();
+        this.startTime = System.nanoTime();
+        this.headerRead = !listener.isProxyProtocol();
+    }
+
+    void start() {
+        try {
+            client.configureBlocking(false);
+            client.socket().setTcpNoDelay(true);
+            remoteAddress = (InetSocketAddress) client.getRemoteAddress();
+
+            upstream.buffer = bufferPool.acquire();
+            clientKey = client.register(worker.getSelector(), SelectionKey.OP_READ, this);
+            if (headerRead && !admit()) return;
+            if (headerRead && !listener.getResolver().needsInitialData()) {
+                connectBackend(listener.getResolver().resolve(getRemoteAddress(), ByteBuffer.allocate(0)));
+            }
+            if (!closed) updateInterest();
+        } catch (IOException exception) {
+            LOGGER.debug("Failed to start relay connection", exception);
+            close();
+        }
+    }
+
+    @Override
+    public void handle(@NotNull SelectionKey key) throws IOException {
+        if (closed) return;
+
+        if (!connected) {
+            if (key == backendKey && key.isConnectable()) {
+                if (backend.finishConnect()) onConnected();
+            } else if (key == clientKey && key.isReadable()) {
+                readInitialData();
+            }
+        } else if (key == clientKey) {
+            if (key.isReadable()) upstream.pump(client, backend);
+            if (key.isWritable()) downstream.flush(client);
+        } else {
+            if (key.isReadable()) {
+                long read = downstream.pump(backend, client);
+                if (read > 0 && admission.isLimitingBandwidth()) throttle(admission.consume(bandwidth, read));
+            }
+            if (key.isWritable()) upstream.flush(backend);
+        }
+
+        if (!closed) updateInterest();
+    }
+
+    /**
+     * Stops reading from the server until the bandwidth limit allows sending more data
+     */
+    private void throttle(long delayNanos) {
+        if (delayNanos <= 0) return;
+
+        downstream.paused = true;
+        worker.schedule(() -> {
+            if (closed) return;
+            downstream.paused = false;
+            updateInterest();
+        }, delayNanos);
+    }
+
+    private void onConnected() throws IOException {
+        connected = true;
+        upstream.flush(backend); // Data received while connecting
+    }
+
+    /**
+     * Reads until the PROXY header is received and the resolver chose a server
+     */
+    private void readInitialData() throws IOException {
+        if (client.read(upstream.buffer) == -1) {
+            // Still forward what was received if the server is already chosen
+            if (backend != null) upstream.endOfStream = true;
+            else close();
+            return;
+        }
+
+        ByteBuffer received = upstream.buffer.duplicate().flip();
+        if (!headerRead) {
+            ProxyProtocol.Header header = ProxyProtocol.read(received);
+            if (header == null) return;
+
+            headerRead = true;
+            if (header.getSourceAddress() != null) remoteAddress = header.getSourceAddress();
+            upstream.buffer.flip().position(header.getLength());
+            upstream.buffer.compact();
+            received = upstream.buffer.duplicate().flip();
+            if (!admit()) return;
+        }
+
+        if (backend != null) return; // Already connecting, the data is sent once connected
+
+        BackendResolver resolver = listener.getResolver();
+        ByteBuffer initialData = resolver.needsInitialData() ? received.asReadOnlyBuffer() : ByteBuffer.allocate(0);
+        InetSocketAddress address = resolver.resolve(getRemoteAddress(), initialData);
+        if (address != null) connectBackend(address);
+        else if (!upstream.buffer.hasRemaining()) throw new IOException("No server resolved for " + getRemoteAddress());
+    }
+
+    /**
+     * Checks the connection limits once the address of the player is known
+     *
+     * @return false if the connection was rejected and closed
+     */
+    private boolean admit() {
+        if (!admission.tryAdmit(getRemoteAddress().getAddress())) {
+            LOGGER.debug("Rejected relayed connection of " + getRemoteAddress() + ", connection limit reached");
+            listener.getMetrics().connectionRejected();
+            close();
+            return false;
+        }
+
+        admitted = true;
+        listener.getMetrics().connectionOpened();
+        bandwidth = admission.createConnectionBucket();
+        return true;
+    }
+
+    private void connectBackend(@Nullable InetSocketAddress address) throws IOException {
+        if (address == null) throw new IOException("No server resolved for " + getRemoteAddress());
+
+        backend = SocketChannel.open();
+        backend.configureBlocking(false);
+        backend.socket().setTcpNoDelay(true);
+        downstream.buffer = bufferPool.acquire();
+
+        boolean connectedNow = backend.connect(address);
+        backendKey = backend.register(worker.getSelector(), connectedNow ? 0 : SelectionKey.OP_CONNECT, this);
+        if (connectedNow) onConnected();
+    }
+
+    private void updateInterest() {
+        if (upstream.isDone() && downstream.isDone()) {
+            close();
+            return;
+        }
+
+        if (!connected) {
+            boolean readMore = backend == null || upstream.canRead();
+            clientKey.interestOps(readMore ? SelectionKey.OP_READ : 0);
+            return;
+        }
+
+        int clientOps = (upstream.canRead() ? SelectionKey.OP_READ : 0) | (downstream.hasPending() ? SelectionKey.OP_WRITE : 0);
+        int backendOps = (downstream.canRead() ? SelectionKey.OP_READ : 0) | (upstream.hasPending() ? SelectionKey.OP_WRITE : 0);
+        clientKey.interestOps(clientOps);
+        backendKey.interestOps(backendOps);
+        reportTransferred();
+    }
+
+    private void reportTransferred() {
+        TunnelMetrics metrics = listener.getMetrics();
+        metrics.addBytesIn(upstream.takeTransferred());
+        metrics.addBytesOut(downstream.takeTransferred());
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        closeChannel(client);
+        if (backend != null) closeChannel(backend);
+        if (upstream.buffer != null) bufferPool.release(upstream.buffer);
+        if (downstream.buffer != null) bufferPool.release(downstream.buffer);
+        upstream.buffer = null;
+        downstream.buffer = null;
+
+        long duration = System.nanoTime() - startTime;
+        reportTransferred();
+        if (admitted) { // Only admitted connections were counted as opened
+            admission.release(getRemoteAddress().getAddress());
+            listener.getMetrics().connectionClosed(duration);
+        }
+        listener.removeConnection(this);
+        LOGGER.debug("Relayed connection of " + remoteAddress + " closed after " + TimeUnit.NANOSECONDS.toMillis(duration)
+                + "ms (" + upstream.total + " bytes in, " + downstream.total + " bytes out)");
+    }
+
+    private static void closeChannel(@NotNull SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            LOGGER.debug("Failed to close relay channel", exception);
+        }
+    }
+
+    @NotNull
+    public InetSocketAddress getRemoteAddress() {
+        InetSocketAddress address = remoteAddress;
+        return address == null ? new InetSocketAddress(0) : address;
+    }
+
+    public long getBytesIn() {
+        return upstream.total;
+    }
+
+    public long getBytesOut() {
+        return downstream.total;
+    }
+
+    /**
+     * @return the time since the connection was accepted in milliseconds
+     */
+    public long getDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    @NotNull
+    RelayWorker getWorker() {
+        return worker;
+    }
+
+    /**
+     * One direction of the connection. The buffer is always in write mode, its position is the amount of pending bytes.
+     */
+    private static class Flow {
+        private ByteBuffer buffer;
+        private boolean endOfStream;
+        private boolean shutdown;
+        private boolean paused; // Waiting for the bandwidth limit
+        private volatile long total;
+        private long transferred; // Not yet reported to the metrics
+
+        /**
+         * @return the amount of bytes read from the source
+         */
+        private int pump(@NotNull SocketChannel source, @NotNull SocketChannel target) throws IOException {
+            int read = 0;
+            if (canRead()) {
+                read = source.read(buffer);
+                if (read == -1) endOfStream = true;
+            }
+
+            flush(target);
+            return read;
+        }
+
+        private void flush(@NotNull SocketChannel target) throws IOException {
+            if (buffer.position() > 0) {
+                buffer.flip();
+                int written = target.write(buffer);
+                buffer.compact();
+
+                total += written;
+                transferred += written;
+            }
+
+            if (endOfStream && !shutdown && buffer.position() == 0) {
+                target.shutdownOutput();
+                shutdown = true;
+            }
+        }
+
+        private long takeTransferred() {
+            long value = transferred;
+            transferred = 0;
+            return value;
+        }
+
+        private boolean canRead() {
+            return !endOfStream && !paused && buffer.hasRemaining();
+        }
+
+        private boolean hasPending() {
+            return buffer != null && buffer.position() > 0;
+        }
+
+        private boolean isDone() {
+            return shutdown;
+        }
+
+    }
+
+}
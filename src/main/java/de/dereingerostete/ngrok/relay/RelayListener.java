@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import de.dereingerostete.ngrok.metrics.TunnelMetrics;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Accepts the connections of one tunnel on a loopback port and relays them to the resolved server
+ */
+public class RelayListener implements RelayWorker.Handler, Closeable {
+    private static final long ACCEPT_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private final @NotNull RelayServer server;
+    private final @NotNull ServerSocketChannel channel;
+    private final @Getter @NotNull BackendResolver resolver;
+    private final @Getter @NotNull TunnelMetrics metrics;
+    private final @Getter boolean proxyProtocol;
+    private final @Getter int port;
+    private final @NotNull Set<RelayConnection> connections;
+    private SelectionKey key;
+
+    RelayListener(@NotNull RelayServer server, @NotNull BackendResolver resolver,
+                  @NotNull TunnelMetrics metrics, boolean proxyProtocol) throws IOException {
+        this.server = server;
+        this.resolver = resolver;
+        this.metrics = metrics;
+        this.proxyProtocol = proxyProtocol;
+        this.connections = ConcurrentHashMap.newKeySet();
+
+        this.channel = ServerSocketChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        this.port = channel.socket().getLocalPort();
+    }
+
+    void register() {
+        try {
+            key = channel.register(server.getAcceptWorker().getSelector(), SelectionKey.OP_ACCEPT, this);
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to register relay on port " + port, exception);
+            close();
+        }
+    }
+
+    /**
+     * Accepts all pending connections. A failed accept, e.g. because the process ran out of file descriptors,
+     * does not close the listener, it only stops accepting for a moment.
+     */
+    @Override
+    public void handle(@NotNull SelectionKey key) {
+        SocketChannel client;
+        try {
+            while ((client = channel.accept()) != null) {
+                RelayWorker worker = server.nextWorker();
+                RelayConnection connection = new RelayConnection(this, worker, client,
+                        server.getBufferPool(), server.getAdmissionController());
+                connections.add(connection);
+                worker.execute(connection::start);
+            }
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to accept relayed connection on port " + port, exception);
+            key.interestOps(0); // The pending connection would be selected again right away
+            server.getAcceptWorker().schedule(() -> {
+                if (key.isValid()) key.interestOps(SelectionKey.OP_ACCEPT);
+            }, ACCEPT_RETRY_NANOS);
+        }
+    }
+
+    /**
+     * @return the currently relayed connections
+     */
+    @NotNull
+    public List<RelayConnection> getConnections() {
+        return List.copyOf(connections);
+    }
+
+    void removeConnection(@NotNull RelayConnection connection) {
+        connections.remove(connection);
+    }
+
+    @Override
+    public void close() {
+        server.getAcceptWorker().execute(() -> {
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException exception) {
+                LOGGER.warn("Failed to close relay on port " + port, exception);
+            }
+        });
+
+        for (RelayConnection connection : connections) {
+            connection.getWorker().execute(connection::close);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import de.dereingerostete.ngrok.metrics.TunnelMetrics;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Relays TCP connections between Ngrok and the Minecraft servers.
+ * Every accepted connection is assigned to one of a few worker threads, each running all its connections on one selector.
+ * Data is copied through pooled direct buffers. Zero-copy transfers with transferTo are not possible here,
+ * as they require a file channel on one side.
+ */
+public class RelayServer implements Closeable {
+    private static final int MAX_POOLED_PER_WORKER = 256;
+    private final @NotNull RelayWorker @NotNull [] workers;
+    private final @NotNull BufferPool bufferPool;
+    private final @Getter @NotNull AdmissionController admissionController;
+    private final @NotNull AtomicInteger nextWorker;
+
+    public RelayServer(int workerCount, int bufferSize, @NotNull AdmissionController admissionController) throws IOException {
+        workerCount = Math.max(1, workerCount);
+        this.admissionController = admissionController;
+        this.bufferPool = new BufferPool(bufferSize, workerCount * MAX_POOLED_PER_WORKER);
+        this.nextWorker = new AtomicInteger();
+        this.workers = new RelayWorker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new RelayWorker(i + 1);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Opens a relay on a free loopback port
+     *
+     * @param resolver Chooses the server every connection is forwarded to
+     * @param metrics The metrics the connections are recorded in
+     * @param proxyProtocol True if every connection starts with a PROXY protocol header
+     */
+    @NotNull
+    public RelayListener open(@NotNull BackendResolver resolver, @NotNull TunnelMetrics metrics,
+                              boolean proxyProtocol) throws IOException {
+        RelayListener listener = new RelayListener(this, resolver, metrics, proxyProtocol);
+        workers[0].execute(listener::register);
+        return listener;
+    }
+
+    @NotNull
+    RelayWorker nextWorker() {
+        return workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+    }
+
+    @NotNull
+    RelayWorker getAcceptWorker() {
+        return workers[0];
+    }
+
+    @NotNull
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void close() {
+        for (RelayWorker worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+}
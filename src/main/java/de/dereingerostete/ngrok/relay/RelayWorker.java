@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Event loop running the connections assigned to it on a single selector.
+ * Other threads hand over work with {@link #execute(Runnable)}, as channels may only be registered by this thread.
+ */
+class RelayWorker implements Runnable {
+    private final @NotNull Selector selector;
+    private final @NotNull Queue<Runnable> tasks;
+    private final @NotNull PriorityQueue<Timer> timers; // Only used by the worker thread
+    private final @NotNull Thread thread;
+    private volatile boolean running;
+
+    RelayWorker(int id) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.timers = new PriorityQueue<>();
+        this.thread = new Thread(this, "RelayWorkerThread-" + id);
+        thread.setDaemon(true);
+        this.running = true;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void execute(@NotNull Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the task after the delay, may only be called by the worker thread
+     */
+    void schedule(@NotNull Runnable task, long delayNanos) {
+        timers.add(new Timer(System.nanoTime() + delayNanos, task));
+    }
+
+    @NotNull
+    Selector getSelector() {
+        return selector;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Timer next = timers.peek();
+                if (next == null) {
+                    selector.select();
+                } else {
+                    long timeout = TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime());
+                    if (timeout > 0) selector.select(timeout);
+                    else selector.selectNow();
+                }
+            } catch (IOException exception) {
+                LOGGER.warn("Relay selector failed", exception);
+                break;
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                runTask(task);
+            }
+
+            long now = System.nanoTime();
+            while (!timers.isEmpty() && timers.peek().deadline - now <= 0) {
+                runTask(timers.poll().task);
+            }
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+
+                Handler handler = (Handler) key.attachment();
+                try {
+                    handler.handle(key);
+                } catch (IOException | CancelledKeyException exception) {
+                    LOGGER.debug("Relay channel failed", exception);
+                    handler.close();
+                }
+            }
+        }
+
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            ((Handler) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to close relay selector", exception);
+        }
+    }
+
+    private static void runTask(@NotNull Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException exception) {
+            LOGGER.warn("Relay task threw exception", exception);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private static class Timer implements Comparable<Timer> {
+        private final long deadline;
+        private final @NotNull Runnable task;
+
+        private Timer(long deadline, @NotNull Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(@NotNull Timer other) {
+            return Long.compare(deadline, other.deadline);
+        }
+
+    }
+
+    interface Handler {
+
+        void handle(@NotNull SelectionKey key) throws IOException;
+
+        void close();
+
+    }
+
+}
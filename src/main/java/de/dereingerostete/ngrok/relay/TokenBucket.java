@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket limiting the amount of bytes per second.
+ * Instead of a token count, it only stores the time at which the bucket would be full again
+ * (generic cell rate algorithm), so consuming tokens is a single compare-and-set.
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private final long rate; // Bytes per second
+    private final long burstNanos; // Time equivalent of the burst size
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param rate The allowed bytes per second
+     * @param burst The bytes that can be consumed at once after the bucket was idle
+     */
+    public TokenBucket(long rate, long burst) {
+        if (rate <= 0) throw new IllegalArgumentException("Rate must be positive");
+        this.rate = rate;
+        this.burstNanos = Math.max(1, burst) * NANOS_PER_SECOND / rate;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Consumes the given amount of bytes, even if there are not enough tokens left
+     *
+     * @return the time in nanoseconds to wait before consuming more bytes, 0 if there is no need to wait
+     */
+    public long consume(long bytes) {
+        long cost = bytes * NANOS_PER_SECOND / rate;
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long newArrival = Math.max(arrival, now) + cost;
+            if (theoreticalArrival.compareAndSet(arrival, newArrival)) {
+                return Math.max(0, newArrival - now - burstNanos);
+            }
+        }
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import de.dereingerostete.ngrok.Bootstrap;
+import de.dereingerostete.ngrok.jfr.DownloadEvent;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Properties;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * On-disk cache for files of a Maven repository.
+ * Files are stored with the same layout as in the repository and are verified against the published SHA-1 checksum.
+ * Changing files like the maven-metadata.xml are revalidated with ETag and Last-Modified,
+ * if the repository can't be reached the cached file is used.
+ */
+public class ArtifactCache {
+    private static final @NotNull URI MAVEN_CENTRAL = URI.create("https://repo1.maven.org/maven2/");
+    private static final @NotNull Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final @NotNull String INFO_SUFFIX = ".cache";
+    private static volatile @Nullable ArtifactCache defaultCache;
+    private final @Getter @NotNull URI repository;
+    private final @Getter @NotNull Path directory;
+    private final @NotNull HttpClient client;
+
+    public ArtifactCache(@NotNull URI repository, @NotNull Path directory, @NotNull HttpClient client) {
+        String uri = repository.toString();
+        this.repository = uri.endsWith("/") ? repository : URI.create(uri + "/");
+        this.directory = directory.toAbsolutePath().normalize();
+        this.client = client;
+    }
+
+    /**
+     * @return the cache for Maven Central in the data folder
+     */
+    @NotNull
+    public static ArtifactCache getDefault() {
+        ArtifactCache cache = defaultCache;
+        if (cache != null) return cache;
+
+        synchronized (ArtifactCache.class) {
+            if (defaultCache == null) {
+                Path directory = Bootstrap.DATA_FOLDER.toPath().resolve("cache").resolve("maven");
+                defaultCache = new ArtifactCache(MAVEN_CENTRAL, directory, HttpClients.shared());
+            }
+            return defaultCache;
+        }
+    }
+
+    /**
+     * Returns the cached file of the repository path, downloading it if necessary
+     *
+     * @param path The path relative to the repository, e.g. "com/formdev/flatlaf/maven-metadata.xml"
+     * @param revalidate Whether a cached file may have changed and has to be checked with the repository.
+     *                   Released artifacts never change and don't need to be revalidated.
+     */
+    @NotNull
+    public synchronized Path get(@NotNull String path, boolean revalidate) throws IOException {
+        Path file = directory.resolve(path).normalize();
+        if (!file.startsWith(directory)) throw new IOException("Invalid repository path: " + path);
+
+        boolean cached = Files.isRegularFile(file);
+        if (cached && !revalidate) return file;
+
+        Path infoFile = file.resolveSibling(file.getFileName() + INFO_SUFFIX);
+        Properties info = cached ? readInfo(infoFile) : new Properties();
+        URI uri = repository.resolve(path);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET();
+
+        String etag = info.getProperty("etag");
+        String lastModified = info.getProperty("lastModified");
+        if (etag != null) builder.header("If-None-Match", etag);
+        if (lastModified != null) builder.header("If-Modified-Since", lastModified);
+
+        try {
+            HttpResponse<InputStream> response = send(builder.build());
+            try (InputStream body = response.body()) {
+                int status = response.statusCode();
+                if (status == 304 && cached) return file;
+                if (status != 200) throw new IOException("Unexpected status " + status + " for " + uri);
+
+                download(uri, body, file);
+            }
+
+            Properties newInfo = new Properties();
+            response.headers().firstValue("ETag").ifPresent(value -> newInfo.setProperty("etag", value));
+            response.headers().firstValue("Last-Modified").ifPresent(value -> newInfo.setProperty("lastModified", value));
+            writeInfo(infoFile, newInfo);
+            return file;
+        } catch (IOException exception) {
+            if (!cached) throw exception;
+            LOGGER.warn("Failed to revalidate " + uri + ". Using the cached file (" + exception + ")");
+            return file;
+        }
+    }
+
+    /**
+     * Downloads the body next to the file, verifies its checksum and then moves it into place
+     */
+    private void download(@NotNull URI uri, @NotNull InputStream body, @NotNull Path file) throws IOException {
+        DownloadEvent event = new DownloadEvent();
+        event.url = uri.toString();
+        event.begin();
+
+        Files.createDirectories(file.getParent());
+        Path tempFile = file.resolveSibling(file.getFileName() + ".part");
+        try {
+            MessageDigest digest = createDigest();
+            try (DigestInputStream inputStream = new DigestInputStream(body, digest);
+                 OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                event.bytes = inputStream.transferTo(outputStream);
+            }
+
+            String expected = fetchChecksum(URI.create(uri + ".sha1"));
+            String actual = toHex(digest.digest());
+            if (!actual.equals(expected)) throw new IOException("Checksum mismatch for " + uri + ": " + actual + " != " + expected);
+
+            move(tempFile, file);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        event.commit();
+    }
+
+    @NotNull
+    private String fetchChecksum(@NotNull URI uri) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET().build();
+        HttpResponse<InputStream> response = send(request);
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) throw new IOException("Unexpected status " + response.statusCode() + " for " + uri);
+
+            // Some repositories append the file name after the hash
+            String content = new String(body.readNBytes(1024), StandardCharsets.US_ASCII).trim();
+            int index = content.indexOf(' ');
+            return (index == -1 ? content : content.substring(0, index)).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @NotNull
+    private HttpResponse<InputStream> send(@NotNull HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+        }
+    }
+
+    @NotNull
+    private static Properties readInfo(@NotNull Path infoFile) {
+        Properties info = new Properties();
+        try (Reader reader = Files.newBufferedReader(infoFile, StandardCharsets.UTF_8)) {
+            info.load(reader);
+        } catch (IOException exception) {
+            // Unknown, the file is downloaded again
+        }
+        return info;
+    }
+
+    private static void writeInfo(@NotNull Path infoFile, @NotNull Properties info) throws IOException {
+        Path tempFile = infoFile.resolveSibling(infoFile.getFileName() + ".part");
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            info.store(writer, null);
+        }
+        move(tempFile, infoFile);
+    }
+
+    private static void move(@NotNull Path source, @NotNull Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @NotNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-1 is not supported", exception);
+        }
+    }
+
+    @NotNull
+    private static String toHex(byte @NotNull [] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            builder.append(Character.forDigit((value >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(value & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+}
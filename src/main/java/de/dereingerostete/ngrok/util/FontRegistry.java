@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Loads the fonts of the GUI once and caches every derived size and style.
+ * The fonts are loaded by a startup stage, so the event dispatch thread never parses font files.
+ * Until they are loaded, the logical Dialog font is handed out and replaced by {@link #refreshWhenLoaded(Component)}.
+ */
+public class FontRegistry {
+    private static final @NotNull String[] FONT_FILES = {"Kanit-Regular.ttf", "Kanit-SemiBold.ttf"};
+    private static final int REGULAR = 0;
+    private static final int BOLD = 1;
+    private static final @NotNull CompletableFuture<Void> READY = new CompletableFuture<>();
+    private static final @NotNull Font[] BASE_FONTS = new Font[FONT_FILES.length];
+    private static final @NotNull Map<Long, Font> DERIVED_FONTS = new ConcurrentHashMap<>();
+    private static final @NotNull Font[] FALLBACK_FONTS = {new Font(Font.DIALOG, Font.PLAIN, 1), new Font(Font.DIALOG, Font.BOLD, 1)};
+    private static final @NotNull Map<Long, Font> DERIVED_FALLBACK_FONTS = new ConcurrentHashMap<>();
+    private static final @NotNull Map<Font, Long> FALLBACK_KEYS = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the fonts and registers them with the graphics environment.
+     * If a font can't be loaded, the logical Dialog font is used instead and the loading is not retried.
+     * Does nothing if the fonts are already loaded.
+     */
+    public static synchronized void load() {
+        if (READY.isDone()) return;
+
+        try {
+            GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
+            Font[] fonts = new Font[FONT_FILES.length];
+            for (int index = 0; index < FONT_FILES.length; index++) {
+                fonts[index] = loadFont(FONT_FILES[index]);
+                environment.registerFont(fonts[index]);
+            }
+            System.arraycopy(fonts, 0, BASE_FONTS, 0, fonts.length);
+        } catch (RuntimeException exception) {
+            LOGGER.warn("Failed to load fonts, using the Dialog font instead", exception);
+            System.arraycopy(FALLBACK_FONTS, 0, BASE_FONTS, 0, FALLBACK_FONTS.length);
+            READY.completeExceptionally(exception); // Publishes the fallback fonts to other threads
+            return;
+        }
+
+        READY.complete(null); // Publishes the base fonts to other threads
+        LOGGER.info("Loaded fonts " + BASE_FONTS[REGULAR].getFontName() + " and " + BASE_FONTS[BOLD].getFontName());
+    }
+
+    /**
+     * @return a future completing once the fonts are loaded, or completing exceptionally if the fallback font is used
+     */
+    @NotNull
+    public static CompletableFuture<Void> ready() {
+        return READY;
+    }
+
+    @NotNull
+    public static Font getDefaultFont() {
+        return regular(16f);
+    }
+
+    @NotNull
+    public static Font getButtonFont() {
+        return regular(14f);
+    }
+
+    @NotNull
+    public static Font getBoldFont() {
+        return bold(16f);
+    }
+
+    @NotNull
+    public static Font getTitleFont() {
+        return bold(24f);
+    }
+
+    @NotNull
+    public static Font regular(float size) {
+        return get(REGULAR, Font.PLAIN, size);
+    }
+
+    @NotNull
+    public static Font bold(float size) {
+        return get(BOLD, Font.PLAIN, size);
+    }
+
+    /**
+     * Replaces the fallback fonts of the component and its children once the fonts are loaded.
+     * Runs on the event dispatch thread and does nothing if the fonts failed to load.
+     */
+    public static void refreshWhenLoaded(@NotNull Component root) {
+        ready().thenRunAsync(() -> {
+            replaceFallbackFonts(root);
+            root.revalidate();
+            root.repaint();
+        }, EventQueue::invokeLater);
+    }
+
+    private static void replaceFallbackFonts(@NotNull Component component) {
+        if (component.isFontSet()) {
+            Long key = FALLBACK_KEYS.get(component.getFont());
+            if (key != null) component.setFont(get(key));
+        }
+
+        if (component instanceof Container) {
+            for (Component child : ((Container) component).getComponents()) replaceFallbackFonts(child);
+        }
+    }
+
+    @NotNull
+    private static Font get(int index, int style, float size) {
+        // Index, style and size packed into one long instead of a key object with its own hashCode and equals
+        return get((long) index << 40 | (long) style << 32 | Float.floatToIntBits(size) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the cached font, deriving it on first use. Returns a fallback font while the fonts are not loaded yet.
+     * The style of the base font is kept, so the bold fallback font stays bold.
+     */
+    @NotNull
+    private static Font get(long key) {
+        if (!READY.isDone()) {
+            return DERIVED_FALLBACK_FONTS.computeIfAbsent(key, ignored -> {
+                Font font = derive(FALLBACK_FONTS, key);
+                FALLBACK_KEYS.put(font, key);
+                return font;
+            });
+        }
+
+        Font font = DERIVED_FONTS.get(key);
+        if (font != null) return font;
+        return DERIVED_FONTS.computeIfAbsent(key, ignored -> derive(BASE_FONTS, key));
+    }
+
+    @NotNull
+    private static Font derive(@NotNull Font[] baseFonts, long key) {
+        Font base = baseFonts[(int) (key >>> 40)];
+        int style = (int) (key >>> 32) & 0xFF;
+        return base.deriveFont(style | base.getStyle(), Float.intBitsToFloat((int) key));
+    }
+
+    @NotNull
+    private static Font loadFont(@NotNull String name) {
+        ClassLoader loader = FontRegistry.class.getClassLoader();
+        try (InputStream inputStream = loader.getResourceAsStream("fonts/" + name)) {
+            if (inputStream == null) throw new IllegalStateException("No font found with the name " + name);
+            return Font.createFont(Font.TRUETYPE_FONT, inputStream);
+        } catch (IOException | FontFormatException exception) {
+            throw new IllegalStateException("Failed to load font " + name, exception);
+        }
+    }
+
+}
@@ -25,19 +25,12 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
-import java.net.URL;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.Locale;
 
 public class GUIUtils {
-    public static final @NotNull Font DEFAULT_FONT = loadFont("Kanit-Regular.ttf", 16f);
-    public static final @NotNull Font BUTTON_FONT = DEFAULT_FONT.deriveFont(14f);
-    public static final @NotNull Font BOLD_FONT = loadFont("Kanit-SemiBold.ttf", 16f);
-    public static final @NotNull Font TITLE_FONT = BOLD_FONT.deriveFont(24f);
-
     @NotNull
     public static ActionListener createDefaultPortListener(@NotNull MainPanel panel) {
         return event -> {
@@ -65,15 +58,9 @@ public class GUIUtils {
                 return;
             }
 
-            try {
-                configuration.setDefaultPort(port);
-                configuration.save(Bootstrap.getConfigFile());
-
-                panel.setDefaultPort(port);
-            } catch (IOException exception) {
-                Bootstrap.LOGGER.warn("Failed to save config", exception);
-                showWarning(panel, "Unexpected exception", "Failed to save configuration. Please try again later.");
-            }
+            configuration.setDefaultPort(port);
+            Bootstrap.getConfigStore().save();
+            panel.setDefaultPort(port);
         };
     }
 
@@ -147,8 +134,9 @@ public class GUIUtils {
             try {
                 String path = selectedFile.getCanonicalPath();
                 configuration.setMinecraftFolder(path);
-                configuration.save(Bootstrap.getConfigFile());
+                Bootstrap.getConfigStore().save();
                 panel.setFolderPath(path);
+                Bootstrap.restartLogWatcher();
             } catch (IOException exception) {
                 Bootstrap.LOGGER.warn("Failed to save config", exception);
                 showWarning(panel, "Unexpected exception", "Failed to save configuration. Please try again later.");
@@ -156,27 +144,6 @@ public class GUIUtils {
         };
     }
 
-    @NotNull
-    public static URL getResourceAsURL(@NotNull String name) {
-        ClassLoader loader = GUIUtils.class.getClassLoader();
-        URL url = loader.getResource(name);
-        if (url == null) throw new IllegalStateException(name + " was not found as resource");
-        return url;
-    }
-
-    @NotNull
-    public static Font loadFont(@NotNull String name, float size) throws IllegalStateException {
-        ClassLoader loader = GUIUtils.class.getClassLoader();
-        try (InputStream inputStream = loader.getResourceAsStream("fonts/" + name)) {
-            if (inputStream == null) throw new IllegalStateException("No font found with that name");
-
-            Font font = Font.createFont(Font.TRUETYPE_FONT, inputStream);
-            return font.deriveFont(size);
-        } catch (IOException | FontFormatException exception) {
-            throw new IllegalStateException("Failed to load font", exception);
-        }
-    }
-
     public static void showWarning(@Nullable Component parentComponent, @NotNull String title, @NotNull String message) {
         JOptionPane.showMessageDialog(parentComponent, message, title, JOptionPane.WARNING_MESSAGE);
     }
@@ -10,35 +10,81 @@
 package de.dereingerostete.ngrok.util;
 
 import lombok.Data;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 @Data
 public class MavenArtifact {
-    private static final @NotNull String BASE_URL = "https://repo1.maven.org/maven2/";
-    private final @NotNull String groupId;
+    private final @NotNull String groupId; // In path form, e.g. "com/formdev"
     private final @NotNull String artifactId;
 
     @NotNull
     public String getLatestVersion() throws IOException {
-        URL url = new URL(BASE_URL + groupId + "/" + artifactId + "/maven-metadata.xml");
-        String metadata = IOUtils.toString(url, StandardCharsets.UTF_8);
+        return getLatestVersion(ArtifactCache.getDefault());
+    }
+
+    /**
+     * @return the release version of the maven-metadata.xml or the latest version if no release is set
+     */
+    @NotNull
+    public String getLatestVersion(@NotNull ArtifactCache cache) throws IOException {
+        Path metadataFile = cache.get(groupId + "/" + artifactId + "/maven-metadata.xml", true);
+        Document document;
+        try (InputStream inputStream = Files.newInputStream(metadataFile)) {
+            document = createDocumentBuilder().parse(inputStream);
+        } catch (SAXException exception) {
+            throw new IOException("Invalid maven-metadata.xml of " + artifactId, exception);
+        }
 
-        int index = metadata.indexOf("<release>") + 9;
-        int endIndex = metadata.indexOf('<', index);
-        return metadata.substring(index, endIndex);
+        for (String tag : new String[] {"release", "latest"}) {
+            NodeList nodes = document.getElementsByTagName(tag);
+            if (nodes.getLength() > 0 && !nodes.item(0).getTextContent().isBlank()) {
+                return nodes.item(0).getTextContent().trim();
+            }
+        }
+
+        NodeList versions = document.getElementsByTagName("version");
+        if (versions.getLength() == 0) throw new IOException("No versions of " + artifactId + " were published");
+        return versions.item(versions.getLength() - 1).getTextContent().trim();
     }
 
     public void downloadArtifact(@NotNull String version, @NotNull File output) throws IOException {
+        downloadArtifact(ArtifactCache.getDefault(), version, output);
+    }
+
+    /**
+     * Copies the jar of the version from the cache, downloading it if it is not cached yet
+     */
+    public void downloadArtifact(@NotNull ArtifactCache cache, @NotNull String version, @NotNull File output) throws IOException {
         String fileName = artifactId + "-" + version + ".jar";
-        URL url = new URL(BASE_URL + groupId + "/" + artifactId + "/" + version + "/" + fileName);
-        FileUtils.copyURLToFile(url, output);
+        Path jarFile = cache.get(groupId + "/" + artifactId + "/" + version + "/" + fileName, false);
+        Files.copy(jarFile, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @NotNull
+    private static DocumentBuilder createDocumentBuilder() throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException exception) {
+            throw new IOException(exception);
+        }
     }
 
 }
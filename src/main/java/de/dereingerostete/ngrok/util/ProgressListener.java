@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+public interface ProgressListener {
+
+    /**
+     * @param bytes The amount of bytes transferred so far
+     * @param total The total amount of bytes or -1 if unknown
+     */
+    void onProgress(long bytes, long total);
+
+}
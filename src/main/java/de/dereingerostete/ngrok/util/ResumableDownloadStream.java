@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Input stream of a HTTP download that transparently resumes with a range request if the connection drops.
+ * Because resuming is invisible to the reader, the content can be processed while it is downloaded.
+ */
+public class ResumableDownloadStream extends InputStream {
+    private static final int MAX_RETRIES = 5;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long REPORT_INTERVAL = 64 * 1024;
+    private final @NotNull URL url;
+    private final @Nullable ProgressListener listener;
+    private final long retryDelay;
+    private @Nullable InputStream inputStream;
+    private long position;
+    private long total;
+    private long lastReport;
+    private int retries;
+    private boolean closed;
+
+    public ResumableDownloadStream(@NotNull URL url, @Nullable ProgressListener listener) throws IOException {
+        this(url, listener, RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * @param retryDelay The delay before the first retry in milliseconds, every further retry waits one delay longer
+     */
+    ResumableDownloadStream(@NotNull URL url, @Nullable ProgressListener listener, long retryDelay) throws IOException {
+        this.url = url;
+        this.listener = listener;
+        this.retryDelay = retryDelay;
+        this.total = -1;
+        this.inputStream = connect();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        int read = read(buffer, 0, 1);
+        return read == -1 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte @NotNull [] buffer, int offset, int length) throws IOException {
+        while (true) {
+            if (closed) throw new IOException("Stream closed");
+
+            try {
+                if (inputStream == null) inputStream = connect();
+                int read = inputStream.read(buffer, offset, length);
+                if (read == -1 && total != -1 && position < total) {
+                    throw new IOException("Connection closed after " + position + " of " + total + " bytes");
+                }
+
+                if (read > 0) {
+                    position += read;
+                    retries = 0; // Only drops in a row without progress count against the limit
+                    report(false);
+                } else if (read == -1) {
+                    report(true);
+                }
+                return read;
+            } catch (ResumeNotSupportedException exception) {
+                throw exception; // Retrying gets the same answer
+            } catch (IOException exception) {
+                if (++retries > MAX_RETRIES) throw exception;
+                LOGGER.warn("Download interrupted at " + position + " bytes. Resuming (" + retries + "/" + MAX_RETRIES + ")", exception);
+
+                if (inputStream != null) closeQuietly(inputStream);
+                inputStream = null;
+                waitBeforeRetry();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        InputStream stream = inputStream;
+        inputStream = null;
+        if (stream != null) stream.close();
+    }
+
+    @NotNull
+    private InputStream connect() throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(10_000);
+        connection.setReadTimeout(30_000);
+        if (position > 0) connection.setRequestProperty("Range", "bytes=" + position + "-");
+
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            int status = httpConnection.getResponseCode();
+            if (position > 0 && (status != HttpURLConnection.HTTP_PARTIAL || !isRangeStart(connection))) {
+                httpConnection.disconnect();
+                throw new ResumeNotSupportedException("Server does not support resuming downloads (status " + status + ")");
+            } else if (position == 0 && status != HttpURLConnection.HTTP_OK) {
+                httpConnection.disconnect();
+                throw new IOException("Download failed with status " + status);
+            }
+        }
+
+        if (position == 0) total = connection.getContentLengthLong();
+        return connection.getInputStream();
+    }
+
+    private boolean isRangeStart(@NotNull URLConnection connection) {
+        String range = connection.getHeaderField("Content-Range"); // Format: "bytes start-end/total"
+        return range != null && range.startsWith("bytes " + position + "-");
+    }
+
+    private void waitBeforeRetry() throws IOException {
+        try {
+            Thread.sleep(retries * retryDelay);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while resuming download", exception);
+        }
+    }
+
+    /**
+     * @return the amount of bytes downloaded so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    private void report(boolean finished) {
+        if (listener == null) return;
+        if (!finished && position - lastReport < REPORT_INTERVAL) return;
+
+        lastReport = position;
+        listener.onProgress(position, total);
+    }
+
+    private static void closeQuietly(@NotNull InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Thrown if the server ignores the range of a resumed download, which is permanent and not retried
+     */
+    private static class ResumeNotSupportedException extends IOException {
+
+        public ResumeNotSupportedException(@NotNull String message) {
+            super(message);
+        }
+
+    }
+
+}
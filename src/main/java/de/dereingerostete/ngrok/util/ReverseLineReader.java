@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a UTF-8 file from the last to the first line.
+ * The file is read backwards in fixed-size chunks, so only the scanned end of the file
+ * is ever read and at most {@code byteBudget} bytes are read in total.
+ */
+public class ReverseLineReader implements Closeable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private final @NotNull FileChannel channel;
+    private final @NotNull ByteBuffer buffer;
+    private final long byteBudget;
+    private long filePosition;  // File offset of the first byte in the buffer
+    private long bytesRead;
+    private int chunkPosition;  // Scan position inside the buffer, moves towards 0
+    private int lineEnd;        // End of the current line inside the buffer
+    private byte @NotNull [] pending; // Part of the current line that was in the following chunk
+    private int pendingLength;
+    private boolean finished;
+
+    public ReverseLineReader(@NotNull Path file, long byteBudget) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        this.byteBudget = byteBudget;
+        this.filePosition = channel.size();
+        this.pending = new byte[256];
+        this.finished = false;
+    }
+
+    /**
+     * @return the previous line without line terminators or null if the start
+     * of the file or the end of the byte budget was reached
+     */
+    @Nullable
+    public String readLine() throws IOException {
+        if (finished) return null;
+
+        byte[] chunk = buffer.array();
+        while (true) {
+            if (chunkPosition == 0) {
+                prependPending(chunk, 0, lineEnd);
+                lineEnd = 0;
+
+                if (filePosition == 0) { // The first line of the file is complete
+                    finished = true;
+                    return takePending(chunk, 0, 0);
+                } else if (bytesRead >= byteBudget || !readPreviousChunk()) {
+                    finished = true; // The line is cut off by the budget, so it is dropped
+                    return null;
+                }
+            }
+
+            int index = chunkPosition - 1;
+            while (index >= 0 && chunk[index] != '\n') index--;
+
+            if (index >= 0) {
+                String line = takePending(chunk, index + 1, lineEnd);
+                chunkPosition = index;
+                lineEnd = index;
+                return line;
+            }
+            chunkPosition = 0;
+        }
+    }
+
+    private boolean readPreviousChunk() throws IOException {
+        int size = (int) Math.min(CHUNK_SIZE, Math.min(filePosition, byteBudget - bytesRead));
+        if (size <= 0) return false;
+
+        long position = filePosition - size;
+        buffer.clear().limit(size);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) return false; // File was truncated
+        }
+
+        filePosition = position;
+        bytesRead += size;
+        chunkPosition = size;
+        lineEnd = size;
+        return true;
+    }
+
+    private void prependPending(byte @NotNull [] chunk, int start, int end) {
+        int length = end - start;
+        if (length == 0) return;
+
+        if (pending.length < pendingLength + length) {
+            byte[] newPending = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, newPending, length, pendingLength);
+            pending = newPending;
+        } else {
+            System.arraycopy(pending, 0, pending, length, pendingLength);
+        }
+
+        System.arraycopy(chunk, start, pending, 0, length);
+        pendingLength += length;
+    }
+
+    @NotNull
+    private String takePending(byte @NotNull [] chunk, int start, int end) {
+        prependPending(chunk, start, end);
+
+        int length = pendingLength;
+        if (length > 0 && pending[length - 1] == '\r') length--;
+
+        String line = new String(pending, 0, length, StandardCharsets.UTF_8);
+        pendingLength = 0;
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import de.dereingerostete.ngrok.jfr.StartupStageEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Small task graph for the startup.
+ * Every stage starts as soon as all of its dependencies finished, so independent
+ * stages run concurrently on a bounded executor. The wall time of each stage is logged.
+ */
+public class StartupPipeline {
+    private final @NotNull ExecutorService executor;
+    private final @NotNull Map<String, CompletableFuture<Void>> stages;
+    private final @NotNull Map<String, Long> timings;
+    private final long startTime;
+
+    public StartupPipeline(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "StartupThread-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stages = new LinkedHashMap<>();
+        this.timings = new LinkedHashMap<>();
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Adds a stage running on the pipeline executor
+     */
+    @NotNull
+    public CompletableFuture<Void> stage(@NotNull String name, @NotNull Stage stage, @NotNull String... dependencies) {
+        return stage(name, stage, executor, dependencies);
+    }
+
+    /**
+     * Adds a stage running on the given executor, e.g. the event dispatch thread.
+     * If a dependency fails, the stage is skipped and fails as well.
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> stage(@NotNull String name, @NotNull Stage stage,
+                                                      @NotNull Executor stageExecutor, @NotNull String... dependencies) {
+        if (stages.containsKey(name)) throw new IllegalArgumentException("Duplicate stage: " + name);
+
+        List<CompletableFuture<Void>> dependencyFutures = new ArrayList<>();
+        for (String dependency : dependencies) {
+            CompletableFuture<Void> future = stages.get(dependency);
+            if (future == null) throw new IllegalArgumentException("Unknown stage: " + dependency);
+            dependencyFutures.add(future);
+        }
+
+        CompletableFuture<Void> future = CompletableFuture
+                .allOf(dependencyFutures.toArray(new CompletableFuture<?>[0]))
+                .thenRunAsync(() -> runStage(name, stage), stageExecutor);
+        stages.put(name, future);
+        return future;
+    }
+
+    /**
+     * Logs the timings once every stage finished and releases the executor afterwards
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> finish() {
+        CompletableFuture<Void> all = CompletableFuture.allOf(stages.values().toArray(new CompletableFuture<?>[0]));
+        return all.whenComplete((result, throwable) -> {
+            long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            StringBuilder builder = new StringBuilder("Startup finished in " + total + " ms (");
+            synchronized (timings) {
+                timings.forEach((name, time) -> builder.append(name).append(": ").append(time).append(" ms, "));
+            }
+            if (builder.charAt(builder.length() - 1) == ' ') builder.setLength(builder.length() - 2);
+            LOGGER.info(builder.append(')').toString());
+
+            if (throwable != null) LOGGER.warn("Startup failed", throwable);
+            executor.shutdown();
+        });
+    }
+
+    private void runStage(@NotNull String name, @NotNull Stage stage) {
+        StartupStageEvent event = new StartupStageEvent();
+        event.stage = name;
+        event.begin();
+
+        long start = System.nanoTime();
+        try {
+            stage.run();
+        } catch (Exception exception) {
+            throw new CompletionException("Startup stage '" + name + "' failed", exception);
+        } finally {
+            event.commit();
+            long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            synchronized (timings) {
+                timings.put(name, time);
+            }
+            LOGGER.info("Startup stage '" + name + "' took " + time + " ms");
+        }
+    }
+
+    @FunctionalInterface
+    public interface Stage {
+
+        void run() throws Exception;
+
+    }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import lombok.Data;
+
+@Data
+public class AutoRestart {
+    private boolean enabled;
+    private long initialDelay;
+    private long maxDelay;
+    private int maxRestarts;
+
+    public AutoRestart() {
+        this.enabled = true;
+        this.initialDelay = 2000;
+        this.maxDelay = 300000;
+        this.maxRestarts = 0;
+    }
+
+}
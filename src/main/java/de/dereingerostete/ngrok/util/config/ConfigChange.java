@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single top level value that was changed by editing one of the config files
+ */
+@Value
+public class ConfigChange {
+    @NotNull Source source;
+    @NotNull String key;
+    @Nullable Object oldValue;
+    @Nullable Object newValue;
+
+    public boolean is(@NotNull Source source, @NotNull String key) {
+        return this.source == source && this.key.equals(key);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Source {
+        CONFIG("config.yml"),
+        ADDITIONAL_CONFIG("additional-config.yml");
+
+        private final @NotNull String fileName;
+
+    }
+
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public interface ConfigListener {
+
+    /**
+     * Called after a config file was edited and its new values were applied to the live config.
+     * This is not called on the event dispatch thread.
+     *
+     * @param changes The changed values of one file
+     */
+    void onConfigChanged(@NotNull List<ConfigChange> changes);
+
+}
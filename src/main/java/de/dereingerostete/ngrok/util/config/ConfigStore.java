@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import de.dereingerostete.ngrok.jfr.ConfigSaveEvent;
+import de.dereingerostete.ngrok.util.Schedulers;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Writes the {@link Configuration} in the background.
+ * All changes within the delay after the first one are written at once.
+ * The file is replaced atomically, so a crash never leaves a truncated config behind.
+ */
+public class ConfigStore {
+    private final @Getter @NotNull File file;
+    private final @Getter @NotNull Configuration configuration;
+    private final long delayMillis;
+    private final @NotNull Yaml yaml;
+    private final @NotNull Object writeLock;
+    private volatile @Nullable String lastWrittenContent;
+    private @Nullable ScheduledFuture<?> pendingWrite;
+    private boolean dirty;
+
+    public ConfigStore(@NotNull File file, @NotNull Configuration configuration, long delayMillis) {
+        this.file = file;
+        this.configuration = configuration;
+        this.delayMillis = delayMillis;
+        this.writeLock = new Object();
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setAllowUnicode(true);
+
+        Representer representer = new Representer(options);
+        representer.addClassTag(Configuration.class, Tag.MAP);
+        this.yaml = new Yaml(representer, options);
+    }
+
+    /**
+     * Marks the configuration as changed and writes it after the delay, unless a write is already pending
+     */
+    public synchronized void save() {
+        dirty = true;
+        if (pendingWrite != null) return;
+
+        pendingWrite = Schedulers.shared().schedule(() -> {
+            synchronized (this) {
+                pendingWrite = null;
+            }
+            writeIfDirty();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes pending changes now and waits until they are on disk
+     */
+    public void flush() {
+        synchronized (this) {
+            if (pendingWrite != null) pendingWrite.cancel(false);
+            pendingWrite = null;
+        }
+        writeIfDirty();
+    }
+
+    private void writeIfDirty() {
+        synchronized (writeLock) {
+            String content;
+            synchronized (this) {
+                if (!dirty) return;
+                dirty = false;
+                synchronized (configuration) { // The ConfigWatcher applies edits while holding this lock
+                    content = yaml.dump(configuration);
+                }
+            }
+
+            try {
+                write(content);
+            } catch (IOException exception) {
+                LOGGER.warn("Failed to save config", exception);
+                synchronized (this) {
+                    dirty = true; // Retried with the next save or flush
+                }
+            }
+        }
+    }
+
+    private void write(@NotNull String content) throws IOException {
+        ConfigSaveEvent event = new ConfigSaveEvent();
+        event.file = file.getName();
+        event.begin();
+
+        lastWrittenContent = content; // Before the move, the watcher may see the new file right away
+        ConfigUtils.writeAtomically(file, content);
+        event.commit();
+    }
+
+    /**
+     * @return true if the content is what this store wrote last, so the file change was no edit of the user
+     */
+    public boolean isOwnWrite(@NotNull String content) {
+        return content.equals(lastWrittenContent);
+    }
+
+}
@@ -10,6 +10,7 @@
 package de.dereingerostete.ngrok.util.config;
 
 import de.dereingerostete.ngrok.Bootstrap;
+import de.dereingerostete.ngrok.detect.PortDetection;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
@@ -19,13 +20,19 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
-import java.util.List;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.OptionalInt;
 
 public class ConfigUtils {
     private static final int MAX_DISPLAY_LENGTH = 14;
+    private static PortDetection portDetection;
 
     @NotNull
     public static String loadOrCreateData(@NotNull File file) throws IOException {
@@ -44,6 +51,35 @@ public class ConfigUtils {
         }
     }
 
+    /**
+     * Writes the content to a temporary sibling, forces it to disk and moves it over the target,
+     * so a crash never leaves a half written file behind
+     */
+    public static void writeAtomically(@NotNull File file, @NotNull String content) throws IOException {
+        Path targetPath = file.toPath();
+        Path tempPath = targetPath.resolveSibling(file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+
+        try {
+            Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @NotNull
+    public static URL getResourceAsURL(@NotNull String name) {
+        ClassLoader loader = ConfigUtils.class.getClassLoader();
+        URL url = loader.getResource(name);
+        if (url == null) throw new IllegalStateException(name + " was not found as resource");
+        return url;
+    }
+
     @NotNull
     public static String displayPath(@Nullable String path) {
         if (path == null) return "None";
@@ -79,46 +115,45 @@ public class ConfigUtils {
     }
 
     @NotNull
-    public static OptionalInt detectMinecraftPort() throws IOException {
+    public static OptionalInt detectMinecraftPort() {
         Configuration configuration = Bootstrap.getConfiguration();
         String folderPath = configuration.getMinecraftFolder();
         if (folderPath == null) return OptionalInt.empty();
 
-        File logsDir = new File(folderPath, "logs");
-        if (!logsDir.exists() || !logsDir.isDirectory()) {
-            Bootstrap.LOGGER.warn("Minecraft's log folder does not exist or isn't a directory");
-            return OptionalInt.empty();
-        }
+        long timeout = Bootstrap.getReadOnlyConfig().getPortDetectionTimeout();
+        return getPortDetection().detect(new File(folderPath), timeout);
+    }
 
-        File latestLogFile = new File(logsDir, "latest.log");
-        if (!latestLogFile.exists() || !latestLogFile.isFile()) {
-            Bootstrap.LOGGER.warn("latest.log does not exist or isn't a file");
-            return OptionalInt.empty();
-        }
+    @NotNull
+    private static synchronized PortDetection getPortDetection() {
+        if (portDetection == null) portDetection = PortDetection.createDefault();
+        return portDetection;
+    }
 
-        List<String> lines = FileUtils.readLines(latestLogFile, StandardCharsets.UTF_8);
-        Collections.reverse(lines);
-        for (String line : lines) {
-            if (!line.contains("Started serving") && !line.contains("Local game hosted on port")) continue;
-
-            int lastSpace = line.lastIndexOf(' ');
-            if (lastSpace == -1) continue;
-
-            String portString = line.substring(lastSpace)
-                    .replace("\n", "")
-                    .replace("\r", "")
-                    .trim();
-
-            try {
-                int port = Integer.parseInt(portString);
-                if (port >= 1000 && port <= 65535) return OptionalInt.of(port);
-                else Bootstrap.LOGGER.warn("Invalid port number (" + port + "). Skipped");
-            } catch (NumberFormatException exception) {
-                Bootstrap.LOGGER.warn("Failed to parse port. Maybe not the right port?", exception);
-            }
+    /**
+     * Parses the port of a log line announcing an opened LAN world or server
+     *
+     * @return the port or an empty optional if the line does not contain a valid port
+     */
+    @NotNull
+    public static OptionalInt parsePortLine(@NotNull String line) {
+        if (!line.contains("Started serving") && !line.contains("Local game hosted on port")) return OptionalInt.empty();
+
+        int lastSpace = line.lastIndexOf(' ');
+        if (lastSpace == -1) return OptionalInt.empty();
+
+        String portString = line.substring(lastSpace)
+                .replace("\n", "")
+                .replace("\r", "")
+                .trim();
+
+        try {
+            int port = Integer.parseInt(portString);
+            if (port >= 1000 && port <= 65535) return OptionalInt.of(port);
+            else Bootstrap.LOGGER.warn("Invalid port number (" + port + "). Skipped");
+        } catch (NumberFormatException exception) {
+            Bootstrap.LOGGER.warn("Failed to parse port. Maybe not the right port?", exception);
         }
-
-        // Nothing found
         return OptionalInt.empty();
     }
 
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import de.dereingerostete.ngrok.util.Schedulers;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static de.dereingerostete.ngrok.Bootstrap.LOGGER;
+
+/**
+ * Watches the data folder and applies edits of the config files without a restart.
+ * An edited file is parsed again once it was quiet for the debounce delay, compared to the live config
+ * and only the changed values are copied into it, so every holder of the live config sees them.
+ * Writes of the {@link ConfigStore} are recognized by their content and ignored.
+ */
+public class ConfigWatcher implements Closeable {
+    private final @NotNull Path folder;
+    private final @NotNull ConfigStore store;
+    private final @NotNull ReadOnlyConfig readOnlyConfig;
+    private final long debounceMillis;
+    private final @NotNull List<ConfigListener> listeners;
+    private final @NotNull Map<ConfigChange.Source, ScheduledFuture<?>> pendingReloads;
+    private final @NotNull Thread thread;
+    private @Nullable WatchService watchService;
+    private volatile boolean closed;
+
+    public ConfigWatcher(@NotNull Path folder, @NotNull ConfigStore store,
+                         @NotNull ReadOnlyConfig readOnlyConfig, long debounceMillis) {
+        this.folder = folder;
+        this.store = store;
+        this.readOnlyConfig = readOnlyConfig;
+        this.debounceMillis = debounceMillis;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.pendingReloads = new EnumMap<>(ConfigChange.Source.class);
+        this.thread = new Thread(this::run, "ConfigWatcherThread");
+        thread.setDaemon(true);
+    }
+
+    public void start() throws IOException {
+        WatchService service = FileSystems.getDefault().newWatchService();
+        folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchService = service;
+        thread.start();
+    }
+
+    public void addListener(@NotNull ConfigListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull ConfigListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void run() {
+        WatchService service = Objects.requireNonNull(watchService);
+        try {
+            while (!closed) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        for (ConfigChange.Source source : ConfigChange.Source.values()) scheduleReload(source);
+                        continue;
+                    }
+
+                    String name = event.context().toString();
+                    for (ConfigChange.Source source : ConfigChange.Source.values()) {
+                        if (source.getFileName().equals(name)) scheduleReload(source);
+                    }
+                }
+
+                if (!key.reset()) {
+                    LOGGER.warn("The data folder is no longer accessible. Stopping config watcher");
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException exception) {
+            // Closed
+        }
+    }
+
+    /**
+     * Editors often write a file several times when saving, so the reload waits until the file is quiet
+     */
+    private synchronized void scheduleReload(@NotNull ConfigChange.Source source) {
+        ScheduledFuture<?> pending = pendingReloads.get(source);
+        if (pending != null) pending.cancel(false);
+
+        pendingReloads.put(source, Schedulers.shared().schedule(() -> reload(source), debounceMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void reload(@NotNull ConfigChange.Source source) {
+        if (closed) return;
+
+        Path file = folder.resolve(source.getFileName());
+        try {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            if (source == ConfigChange.Source.CONFIG && store.isOwnWrite(content)) return;
+
+            Object live = source == ConfigChange.Source.CONFIG ? store.getConfiguration() : readOnlyConfig;
+            Object loaded = new Yaml().loadAs(content, live.getClass());
+            if (loaded == null) throw new YAMLException("File is empty");
+
+            List<ConfigChange> changes = apply(source, live, loaded);
+            if (changes.isEmpty()) return;
+
+            String keys = changes.stream().map(ConfigChange::getKey).collect(Collectors.joining(", "));
+            LOGGER.info("Reloaded " + source.getFileName() + ", changed: " + keys);
+
+            List<ConfigChange> unmodifiableChanges = Collections.unmodifiableList(changes);
+            for (ConfigListener listener : listeners) {
+                try {
+                    listener.onConfigChanged(unmodifiableChanges);
+                } catch (RuntimeException exception) {
+                    LOGGER.warn("Failed to handle changes of " + source.getFileName(), exception);
+                }
+            }
+        } catch (NoSuchFileException exception) {
+            // Deleted or replaced, the next event reloads it
+        } catch (IOException | YAMLException exception) {
+            LOGGER.warn("Failed to reload " + source.getFileName() + ". Keeping the current values", exception);
+        }
+    }
+
+    /**
+     * Copies every top level value that differs from the live config into it
+     */
+    @NotNull
+    private static List<ConfigChange> apply(@NotNull ConfigChange.Source source, @NotNull Object live, @NotNull Object loaded) {
+        List<ConfigChange> changes = new ArrayList<>();
+        synchronized (live) {
+            for (Field field : live.getClass().getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) continue;
+
+                try {
+                    field.setAccessible(true);
+                    Object oldValue = field.get(live);
+                    Object newValue = field.get(loaded);
+                    if (Objects.equals(oldValue, newValue)) continue;
+
+                    field.set(live, newValue);
+                    changes.add(new ConfigChange(source, field.getName(), oldValue, newValue));
+                } catch (IllegalAccessException exception) {
+                    throw new IllegalStateException(exception);
+                }
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (watchService != null) watchService.close();
+    }
+
+}
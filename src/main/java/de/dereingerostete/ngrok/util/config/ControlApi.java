@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import lombok.Data;
+import org.jetbrains.annotations.NotNull;
+
+@Data
+public class ControlApi {
+    private boolean enabled;
+    private int port;
+    private int threads;
+    private int queueSize;
+    private @NotNull String token;
+
+    public ControlApi() {
+        this.enabled = false;
+        this.port = 4050;
+        this.threads = 2;
+        this.queueSize = 16;
+        this.token = "";
+    }
+
+}
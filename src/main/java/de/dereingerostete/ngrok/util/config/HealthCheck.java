@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import lombok.Data;
+
+@Data
+public class HealthCheck {
+    private boolean enabled;
+    private int interval;
+    private long timeout;
+    private int degradedAfter;
+    private int downAfter;
+
+    public HealthCheck() {
+        this.enabled = true;
+        this.interval = 30;
+        this.timeout = 5000;
+        this.degradedAfter = 1;
+        this.downAfter = 3;
+    }
+
+}
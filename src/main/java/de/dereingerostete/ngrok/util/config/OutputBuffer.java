@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import lombok.Data;
+import org.jetbrains.annotations.NotNull;
+
+@Data
+public class OutputBuffer {
+    private int capacity;
+    private int batchSize;
+    private @NotNull String overflowPolicy;
+
+    public OutputBuffer() {
+        this.capacity = 1024;
+        this.batchSize = 64;
+        this.overflowPolicy = "DROP_OLDEST";
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import lombok.Data;
+
+@Data
+public class PortProbe {
+    private boolean enabled;
+    private int fromPort;
+    private int toPort;
+    private int maxInFlight;
+    private long timeout;
+
+    public PortProbe() {
+        this.enabled = true;
+        this.fromPort = 25565;
+        this.toPort = 25664;
+        this.maxInFlight = 512;
+        this.timeout = 500;
+    }
+
+}
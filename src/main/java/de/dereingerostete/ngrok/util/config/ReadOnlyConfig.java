@@ -30,6 +30,18 @@ public class ReadOnlyConfig {
     private @NotNull String downloadPath;
     private @NotNull Map<String, String> parameters;
     private @NotNull Theming theming;
+    private @NotNull OutputBuffer outputBuffer;
+    private int updateCheckInterval;
+    private boolean flightRecorder;
+    private int logScanLimit;
+    private long portDetectionTimeout;
+    private @NotNull PortProbe portProbe;
+    private @NotNull HealthCheck healthCheck;
+    private @NotNull AutoRestart autoRestart;
+    private @NotNull Relay relay;
+    private @NotNull ControlApi controlApi;
+    private boolean watchLatestLog;
+    private boolean autoOpenDetectedPort;
 
     public ReadOnlyConfig() {
         this.region = null;
@@ -37,6 +49,18 @@ public class ReadOnlyConfig {
         this.downloadPath = "https://bin.equinox.io/c/bNyj1mQVY4c/ngrok-v3-stable-windows-amd64.zip";
         this.parameters = new HashMap<>();
         this.theming = new Theming();
+        this.outputBuffer = new OutputBuffer();
+        this.updateCheckInterval = 24;
+        this.flightRecorder = false;
+        this.logScanLimit = 64;
+        this.portDetectionTimeout = 3000;
+        this.portProbe = new PortProbe();
+        this.healthCheck = new HealthCheck();
+        this.autoRestart = new AutoRestart();
+        this.relay = new Relay();
+        this.controlApi = new ControlApi();
+        this.watchLatestLog = true;
+        this.autoOpenDetectedPort = false;
     }
 
     @NotNull
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util.config;
+
+import lombok.Data;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class Relay {
+    private boolean enabled;
+    private int workers;
+    private int bufferSize;
+    private boolean proxyProtocol;
+    private int maxConnections;
+    private int maxConnectionsPerAddress;
+    private int bandwidth;
+    private int bandwidthPerConnection;
+    private @NotNull Map<String, Object> routes;
+
+    public Relay() {
+        this.enabled = false;
+        this.workers = 2;
+        this.bufferSize = 16384;
+        this.proxyProtocol = false;
+        this.maxConnections = 0;
+        this.maxConnectionsPerAddress = 0;
+        this.bandwidth = 0;
+        this.bandwidthPerConnection = 0;
+        this.routes = new HashMap<>();
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Small helper for the benchmarks, which are tagged with {@link #TAG} and excluded from the normal build.
+ * Run them with {@code mvn test -Dgroups=benchmark -DexcludedGroups=none}.
+ */
+public class Benchmark {
+    public static final String TAG = "benchmark";
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    /**
+     * Runs the round a few times to warm up the JIT and measures the following rounds
+     *
+     * @return the wall time of the fastest measured round in nanoseconds
+     */
+    public static long measure(Round round) throws Exception {
+        return measure(WARMUP_ROUNDS, ROUNDS, round);
+    }
+
+    /**
+     * @see #measure(Round)
+     */
+    public static long measure(int warmupRounds, int rounds, Round round) throws Exception {
+        for (int index = 0; index < warmupRounds; index++) round.run();
+
+        long best = Long.MAX_VALUE;
+        for (int index = 0; index < rounds; index++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far or -1 if the JVM does not count them
+     */
+    public static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void report(String name, String format, Object... arguments) {
+        System.out.println("[Benchmark] " + name + ": " + String.format(Locale.ROOT, format, arguments));
+    }
+
+    @FunctionalInterface
+    public interface Round {
+
+        void run() throws Exception;
+
+    }
+
+}
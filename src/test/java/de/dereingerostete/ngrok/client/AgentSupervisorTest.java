@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import de.dereingerostete.ngrok.util.config.AutoRestart;
+import de.dereingerostete.ngrok.util.config.OutputBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentSupervisorTest {
+
+    @Test
+    void delayGrowsExponentiallyWithJitter() {
+        AgentSupervisor supervisor = new AgentSupervisor(() -> createConfig(100, 10_000, 0), () -> {});
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long expected = Math.min(100L << attempt, 10_000);
+            for (int i = 0; i < 100; i++) {
+                long delay = supervisor.getDelay(attempt);
+                assertTrue(delay >= expected / 2 && delay <= expected, "Attempt " + attempt + ": " + delay);
+            }
+        }
+    }
+
+    @Test
+    void delayIsCappedForManyAttempts() {
+        AgentSupervisor supervisor = new AgentSupervisor(() -> createConfig(2000, 300_000, 0), () -> {});
+        for (int attempt : new int[]{20, 31, 63, Integer.MAX_VALUE}) {
+            long delay = supervisor.getDelay(attempt);
+            assertTrue(delay >= 150_000 && delay <= 300_000, "Attempt " + attempt + ": " + delay);
+        }
+    }
+
+    @Test
+    void readsChangedConfig() {
+        AutoRestart config = createConfig(100, 100, 0);
+        AgentSupervisor supervisor = new AgentSupervisor(() -> config, () -> {});
+        assertTrue(supervisor.getDelay(5) <= 100);
+
+        config.setMaxDelay(60_000);
+        assertTrue(supervisor.getDelay(5) >= 1600);
+    }
+
+    @Test
+    void fatalErrorsAreNotRestarted() {
+        assertTrue(AgentSupervisor.isFatal(102));
+        assertTrue(AgentSupervisor.isFatal(103));
+        assertTrue(AgentSupervisor.isFatal(105));
+        assertFalse(AgentSupervisor.isFatal(108));
+        assertFalse(AgentSupervisor.isFatal(0));
+
+        AtomicInteger restarts = new AtomicInteger();
+        AgentSupervisor supervisor = new AgentSupervisor(() -> createConfig(1, 1, 0), restarts::incrementAndGet);
+        supervisor.handleUnexpectedExit(1, 105);
+        assertFalse(supervisor.isRecovering());
+    }
+
+    @Test
+    void restartsUntilOnline() throws InterruptedException {
+        CountDownLatch restarted = new CountDownLatch(2);
+        AgentSupervisor supervisor = new AgentSupervisor(() -> createConfig(10, 20, 0), restarted::countDown);
+
+        supervisor.handleUnexpectedExit(1, 0);
+        assertTrue(supervisor.isRecovering());
+        waitForRestarts(supervisor, 1);
+        supervisor.handleUnexpectedExit(1, 0); // The restarted agent crashed as well
+        assertTrue(restarted.await(5, TimeUnit.SECONDS));
+
+        supervisor.handleOnline();
+        assertFalse(supervisor.isRecovering());
+        assertEquals(2, supervisor.getRestartCount());
+        assertEquals(1, supervisor.getRecoveryTimes().getCount());
+    }
+
+    @Test
+    void givesUpAfterMaxRestarts() throws InterruptedException {
+        AgentSupervisor supervisor = new AgentSupervisor(() -> createConfig(1, 1, 2), () -> {});
+        supervisor.handleUnexpectedExit(1, 0);
+        waitForRestarts(supervisor, 1);
+        supervisor.handleUnexpectedExit(1, 0);
+        waitForRestarts(supervisor, 2);
+
+        supervisor.handleUnexpectedExit(1, 0);
+        assertFalse(supervisor.isRecovering());
+        assertEquals(2, supervisor.getRestartCount());
+    }
+
+    @Test
+    void disabledDoesNothing() {
+        AutoRestart config = createConfig(1, 1, 0);
+        config.setEnabled(false);
+        AgentSupervisor supervisor = new AgentSupervisor(() -> config, () -> fail("Restarted"));
+
+        supervisor.handleUnexpectedExit(1, 0);
+        assertFalse(supervisor.isRecovering());
+    }
+
+    /**
+     * Runs a shell script in place of the Ngrok agent that crashes on the first start and keeps running afterwards
+     */
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void restartsCrashedFakeAgent() throws Exception {
+        AtomicInteger starts = new AtomicInteger();
+        CompletableFuture<NgrokProcessThread> runningAgent = new CompletableFuture<>();
+        AgentSupervisor[] supervisor = new AgentSupervisor[1];
+
+        Runnable startAgent = () -> {
+            String script = starts.incrementAndGet() == 1
+                    ? "echo 'lvl=warn msg=\"failed to reconnect session\"'; exit 3"
+                    : "echo 'lvl=info msg=\"client session established\"'; sleep 30";
+            try {
+                NgrokProcessThread agent = startFakeAgent(script, thread -> {
+                    if (thread.getExitCode() != 0) supervisor[0].handleUnexpectedExit(thread.getExitCode(), thread.getErrorCode());
+                });
+                if (starts.get() > 1) runningAgent.complete(agent);
+            } catch (IOException exception) {
+                runningAgent.completeExceptionally(exception);
+            }
+        };
+        supervisor[0] = new AgentSupervisor(() -> createConfig(10, 20, 0), startAgent);
+
+        startAgent.run();
+        NgrokProcessThread agent = runningAgent.get(10, TimeUnit.SECONDS);
+        try {
+            assertTrue(agent.isRunning());
+            assertEquals(1, supervisor[0].getRestartCount());
+            assertTrue(supervisor[0].isRecovering());
+        } finally {
+            agent.close();
+        }
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void fakeAgentReportsFatalError() throws Exception {
+        CompletableFuture<NgrokProcessThread> exited = new CompletableFuture<>();
+        startFakeAgent("echo 'lvl=eror msg=\"session closed\" err=\"authentication failed: ERR_NGROK_102\"'; exit 1",
+                exited::complete);
+
+        NgrokProcessThread agent = exited.get(10, TimeUnit.SECONDS);
+        assertNotEquals(0, agent.getExitCode()); // Exit code 1 or killed, the handler stops the agent
+        assertEquals(102, agent.getErrorCode());
+
+        AgentSupervisor supervisor = new AgentSupervisor(() -> createConfig(1, 1, 0), () -> fail("Restarted"));
+        supervisor.handleUnexpectedExit(agent.getExitCode(), agent.getErrorCode());
+        assertFalse(supervisor.isRecovering());
+    }
+
+    private static NgrokProcessThread startFakeAgent(String script, Consumer<NgrokProcessThread> onExit) throws IOException {
+        Process process = new ProcessBuilder("sh", "-c", script).start();
+        NgrokProcessThread thread = new NgrokProcessThread(process, new OutputBuffer(), onExit);
+        thread.start();
+        return thread;
+    }
+
+    private static void waitForRestarts(AgentSupervisor supervisor, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (supervisor.getRestartCount() < count) {
+            assertTrue(System.nanoTime() < deadline, "Agent was not restarted in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static AutoRestart createConfig(long initialDelay, long maxDelay, int maxRestarts) {
+        AutoRestart config = new AutoRestart();
+        config.setInitialDelay(initialDelay);
+        config.setMaxDelay(maxDelay);
+        config.setMaxRestarts(maxRestarts);
+        return config;
+    }
+
+}
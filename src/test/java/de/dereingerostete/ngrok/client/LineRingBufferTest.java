@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineRingBufferTest {
+
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(8, new LineRingBuffer(5, OverflowPolicy.BLOCK).getCapacity());
+        assertEquals(1, new LineRingBuffer(1, OverflowPolicy.BLOCK).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new LineRingBuffer(0, OverflowPolicy.BLOCK));
+    }
+
+    @Test
+    void drainsLinesInOrder() throws InterruptedException {
+        LineRingBuffer buffer = new LineRingBuffer(4, OverflowPolicy.BLOCK);
+        buffer.offer("a");
+        buffer.offer("b");
+        buffer.offer("c");
+
+        List<String> lines = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(lines, 2));
+        assertEquals(1, buffer.drainTo(lines, 10));
+        assertEquals(List.of("a", "b", "c"), lines);
+        assertTrue(buffer.isEmpty());
+        assertEquals(3, buffer.getHighWaterMark());
+    }
+
+    @Test
+    void dropOldestKeepsNewestLines() throws InterruptedException {
+        LineRingBuffer buffer = new LineRingBuffer(2, OverflowPolicy.DROP_OLDEST);
+        for (String line : List.of("a", "b", "c", "d")) assertTrue(buffer.offer(line));
+
+        List<String> lines = new ArrayList<>();
+        buffer.drainTo(lines, 10);
+        assertEquals(List.of("c", "d"), lines);
+        assertEquals(4, buffer.getLinesRead());
+        assertEquals(2, buffer.getLinesDropped());
+    }
+
+    @Test
+    void blockWaitsForConsumer() throws Exception {
+        LineRingBuffer buffer = new LineRingBuffer(1, OverflowPolicy.BLOCK);
+        buffer.offer("a");
+
+        CompletableFuture<Boolean> producer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return buffer.offer("b");
+            } catch (InterruptedException exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(producer.isDone());
+
+        List<String> lines = new ArrayList<>();
+        buffer.drainTo(lines, 1);
+        assertTrue(producer.get(5, TimeUnit.SECONDS));
+        buffer.drainTo(lines, 1);
+        assertEquals(List.of("a", "b"), lines);
+        assertEquals(0, buffer.getLinesDropped());
+    }
+
+    @Test
+    void closeReleasesWaitingConsumer() throws Exception {
+        LineRingBuffer buffer = new LineRingBuffer(4, OverflowPolicy.BLOCK);
+        CompletableFuture<Boolean> consumer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return buffer.awaitLines();
+            } catch (InterruptedException exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+        Thread.sleep(100);
+        buffer.close();
+
+        assertFalse(consumer.get(5, TimeUnit.SECONDS));
+        assertFalse(buffer.offer("late"));
+    }
+
+    @Test
+    void queuedLinesSurviveClose() throws InterruptedException {
+        LineRingBuffer buffer = new LineRingBuffer(4, OverflowPolicy.BLOCK);
+        buffer.offer("a");
+        buffer.close();
+
+        assertTrue(buffer.awaitLines());
+        List<String> lines = new ArrayList<>();
+        buffer.drainTo(lines, 10);
+        assertEquals(List.of("a"), lines);
+        assertFalse(buffer.awaitLines());
+    }
+
+}
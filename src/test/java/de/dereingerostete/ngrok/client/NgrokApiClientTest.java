@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NgrokApiClientTest {
+    private static final String TUNNEL_LIST = "{\"tunnels\":[{\"name\":\"mc-25565\",\"public_url\":\"tcp://0.tcp.eu.ngrok.io:1\"," +
+            "\"proto\":\"tcp\",\"config\":{\"addr\":\"localhost:25565\"},\"metrics\":{\"conns\":{\"count\":2}}}]}";
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger listRequests = new AtomicInteger();
+    private HttpServer server;
+    private NgrokApiClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/tunnels", this::handle);
+        server.start();
+        client = new NgrokApiClient("127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        requests.add(method + " " + path + (body.isEmpty() ? "" : " " + body));
+
+        if (method.equals("GET")) {
+            listRequests.incrementAndGet();
+            respond(exchange, 200, TUNNEL_LIST);
+        } else if (method.equals("POST")) {
+            JSONObject request = new JSONObject(body);
+            respond(exchange, 201, "{\"name\":\"" + request.getString("name") + "\",\"public_url\":\"tcp://host:2\"}");
+        } else if (path.endsWith("/missing")) {
+            respond(exchange, 404, "{\"msg\":\"tunnel not found\"}");
+        } else {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Test
+    void listsTunnelsAndCachesThem() throws IOException {
+        List<ApiTunnel> tunnels = client.listTunnels();
+        assertEquals(1, tunnels.size());
+
+        ApiTunnel tunnel = tunnels.get(0);
+        assertEquals("mc-25565", tunnel.getName());
+        assertEquals("tcp://0.tcp.eu.ngrok.io:1", tunnel.getPublicUrl());
+        assertEquals("localhost:25565", tunnel.getAddress());
+        assertEquals(2, tunnel.getMetrics().getJSONObject("conns").getInt("count"));
+
+        assertSame(tunnels, client.listTunnels());
+        assertEquals(1, listRequests.get());
+
+        client.invalidate();
+        client.listTunnels();
+        assertEquals(2, listRequests.get());
+    }
+
+    @Test
+    void startsTunnelWithName() throws IOException {
+        ApiTunnel tunnel = client.startTunnel("mc-25566", Map.of("proto", "tcp", "addr", "25566"));
+        assertEquals("mc-25566", tunnel.getName());
+        assertEquals("tcp://host:2", tunnel.getPublicUrl());
+
+        String request = requests.get(0);
+        assertTrue(request.startsWith("POST /api/tunnels "));
+        JSONObject body = new JSONObject(request.substring("POST /api/tunnels ".length()));
+        assertEquals("mc-25566", body.getString("name"));
+        assertEquals("25566", body.getString("addr"));
+    }
+
+    @Test
+    void stopsTunnelByEncodedName() throws IOException {
+        client.stopTunnel("mc 25565");
+        assertEquals(List.of("DELETE /api/tunnels/mc+25565"), requests);
+    }
+
+    @Test
+    void unexpectedStatusFails() {
+        IOException exception = assertThrows(IOException.class, () -> client.stopTunnel("missing"));
+        assertTrue(exception.getMessage().contains("404"));
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import de.dereingerostete.ngrok.Benchmark;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NgrokLogDecoderTest {
+
+    @Test
+    void decodesJsonLine() {
+        String line = "{\"addr\":\"localhost:25565\",\"lvl\":\"info\",\"msg\":\"started tunnel\",\"name\":\"mc-25565\"," +
+                "\"obj\":\"tunnels\",\"t\":\"2023-10-01T12:00:00+0200\",\"url\":\"tcp://0.tcp.eu.ngrok.io:12345\"}";
+        NgrokLogEvent event = new NgrokLogEvent();
+
+        assertTrue(NgrokLogDecoder.decode(line, event));
+        assertTrue(event.isLevel("info"));
+        assertEquals("started tunnel", event.getMessage());
+        assertEquals("tcp://0.tcp.eu.ngrok.io:12345", event.getUrl());
+        assertEquals("localhost:25565", event.getAddress());
+        assertEquals("mc-25565", event.getName());
+        assertEquals("tunnels", event.getObject());
+        assertNull(event.getError());
+    }
+
+    @Test
+    void skipsNestedAndLiteralJsonValues() {
+        String line = "{\"count\": 3, \"obj\": {\"msg\": \"inner\", \"list\": [1, \"]\"]}, \"ok\": true, \"msg\": \"outer\"}";
+        NgrokLogEvent event = new NgrokLogEvent();
+
+        assertTrue(NgrokLogDecoder.decode(line, event));
+        assertEquals("outer", event.getMessage());
+        assertEquals("{\"msg\": \"inner\", \"list\": [1, \"]\"]}", event.getObject());
+    }
+
+    @Test
+    void unescapesJsonStrings() {
+        String line = "{\"lvl\":\"eror\",\"err\":\"bad \\\"token\\\"\\nsee \\u0041PI\"}";
+        NgrokLogEvent event = new NgrokLogEvent();
+
+        assertTrue(NgrokLogDecoder.decode(line, event));
+        assertEquals("bad \"token\"\nsee API", event.getError());
+        assertTrue(event.isLevel("eror"));
+    }
+
+    @Test
+    void decodesLogfmtLine() {
+        String line = "t=2023-10-01T12:00:00+0200 lvl=warn msg=\"failed to reconnect session\" obj=csess err=\"ERR_NGROK_108\"";
+        NgrokLogEvent event = new NgrokLogEvent();
+
+        assertTrue(NgrokLogDecoder.decode(line, event));
+        assertEquals("warn", event.getLevel());
+        assertEquals("failed to reconnect session", event.getMessage());
+        assertEquals("csess", event.getObject());
+        assertEquals("ERR_NGROK_108", event.getError());
+        assertFalse(event.has(NgrokLogEvent.URL));
+    }
+
+    @Test
+    void rejectsBlankAndMalformedLines() {
+        NgrokLogEvent event = new NgrokLogEvent();
+        assertFalse(NgrokLogDecoder.decode("   ", event));
+        assertFalse(NgrokLogDecoder.decode("{\"msg\":\"unterminated}", event));
+        assertFalse(NgrokLogDecoder.decode("{\"msg\" \"missing colon\"}", event));
+        assertFalse(NgrokLogDecoder.decode("no fields here", event));
+    }
+
+    @Test
+    void reusedEventForgetsPreviousLine() {
+        NgrokLogEvent event = new NgrokLogEvent();
+        assertTrue(NgrokLogDecoder.decode("lvl=info url=tcp://example:1", event));
+        assertTrue(NgrokLogDecoder.decode("lvl=info msg=next", event));
+
+        assertNull(event.getUrl());
+        assertEquals("next", event.getMessage());
+        assertEquals("lvl=info msg=next", event.getLine());
+    }
+
+    /**
+     * Compares the decoder with building a JSONObject per line, which the handler did before
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    void benchmarkAgainstJsonObject() throws Exception {
+        String[] lines = {
+                "{\"addr\":\"localhost:25565\",\"lvl\":\"info\",\"msg\":\"started tunnel\",\"name\":\"mc-25565\"," +
+                        "\"obj\":\"tunnels\",\"t\":\"2023-10-01T12:00:00+0200\",\"url\":\"tcp://0.tcp.eu.ngrok.io:12345\"}",
+                "{\"id\":\"a1b2c3\",\"lvl\":\"dbug\",\"msg\":\"heartbeat received\",\"obj\":\"csess\"," +
+                        "\"t\":\"2023-10-01T12:00:10+0200\",\"latency_ms\":42}",
+                "{\"err\":\"session closed: ERR_NGROK_108\",\"lvl\":\"eror\",\"msg\":\"session closing\"," +
+                        "\"obj\":\"tunnels.session\",\"t\":\"2023-10-01T12:00:20+0200\"}"
+        };
+        int count = 100_000;
+        int[] matches = new int[2];
+        NgrokLogEvent event = new NgrokLogEvent();
+
+        Benchmark.Round decoder = () -> {
+            for (int index = 0; index < count; index++) {
+                if (!NgrokLogDecoder.decode(lines[index % lines.length], event)) throw new AssertionError();
+                if (event.isLevel("info") && event.getUrl() != null) matches[0]++;
+            }
+        };
+        Benchmark.Round json = () -> {
+            for (int index = 0; index < count; index++) {
+                JSONObject object = new JSONObject(lines[index % lines.length]);
+                if ("info".equals(object.optString("lvl", null)) && object.has("url")) {
+                    object.getString("url");
+                    matches[1]++;
+                }
+            }
+        };
+
+        long decoderTime = Benchmark.measure(decoder);
+        long jsonTime = Benchmark.measure(json);
+        assertEquals(matches[0], matches[1]);
+
+        long allocated = Benchmark.getAllocatedBytes();
+        decoder.run();
+        long decoderBytes = Benchmark.getAllocatedBytes() - allocated;
+        allocated = Benchmark.getAllocatedBytes();
+        json.run();
+        long jsonBytes = Benchmark.getAllocatedBytes() - allocated;
+
+        Benchmark.report("NgrokLogDecoder", "%.1f ns and %d bytes per line",
+                (double) decoderTime / count, decoderBytes / count);
+        Benchmark.report("JSONObject", "%.1f ns and %d bytes per line", (double) jsonTime / count, jsonBytes / count);
+        assertTrue(decoderTime < jsonTime, "The decoder is slower than the JSONObject");
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.client;
+
+import de.dereingerostete.ngrok.util.config.OutputBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class NgrokProcessThreadTest {
+    private static final long IDLE_MILLIS = 2000;
+    private static final double MAX_IDLE_CPU = 0.01; // 1% of one core
+
+    /**
+     * Without a running client the URL line fails in the handler, the following error line must still be handled
+     */
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void keepsHandlingAfterFailedLine() throws Exception {
+        String script = "echo 'lvl=info msg=\"started tunnel\" name=mc url=tcp://0.tcp.eu.ngrok.io:1'; " +
+                "echo 'lvl=eror msg=\"session closed\" err=\"unexpected: ERR_NGROK_999\"'; exit 1";
+        Process process = new ProcessBuilder("sh", "-c", script).start();
+
+        CompletableFuture<NgrokProcessThread> exited = new CompletableFuture<>();
+        new NgrokProcessThread(process, new OutputBuffer(), exited::complete).start();
+
+        NgrokProcessThread thread = exited.get(10, TimeUnit.SECONDS);
+        assertEquals(1, thread.getExitCode());
+        assertEquals(999, thread.getErrorCode());
+    }
+
+    /**
+     * The reading and handler threads of an agent without output must park instead of polling the pipes
+     */
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void idleAgentUsesNoCpu() throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadCpuTimeSupported());
+        threadBean.setThreadCpuTimeEnabled(true);
+
+        Process process = new ProcessBuilder("sh", "-c", "echo 'lvl=eror err=\"ERR_NGROK_999\"'; sleep 5").start();
+        NgrokProcessThread thread = new NgrokProcessThread(process, new OutputBuffer(), ignored -> {});
+        thread.start();
+        try {
+            List<Thread> threads = awaitParked(thread); // Startup and the first line are not idle
+
+            long before = getCpuTime(threadBean, threads);
+            Thread.sleep(IDLE_MILLIS);
+            long used = getCpuTime(threadBean, threads) - before;
+
+            assertTrue(thread.isRunning());
+            long budget = (long) (TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS) * MAX_IDLE_CPU);
+            assertTrue(used < budget, "Idle threads used " + used + " ns of CPU time, budget " + budget + " ns");
+        } finally {
+            thread.close();
+        }
+    }
+
+    private static List<Thread> findAgentThreads(NgrokProcessThread thread) {
+        List<Thread> threads = new ArrayList<>();
+        for (Thread candidate : Thread.getAllStackTraces().keySet()) {
+            if (candidate == thread || candidate.getName().endsWith("Thread-" + thread.getId())
+                    && candidate.getName().startsWith("Ngrok")) {
+                threads.add(candidate);
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Waits until the reading threads started and the handler thread handled the line with the error code and parks
+     *
+     * @return the process, error and handler thread of the agent
+     */
+    private static List<Thread> awaitParked(NgrokProcessThread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            List<Thread> threads = findAgentThreads(thread);
+            boolean parked = threads.stream().anyMatch(candidate -> candidate.getName().startsWith("NgrokHandlerThread")
+                    && candidate.getState() == Thread.State.WAITING);
+            if (threads.size() == 3 && parked && thread.getErrorCode() == 999) return threads;
+
+            assertTrue(System.nanoTime() < deadline, "Agent threads did not start in time: " + threads);
+            Thread.sleep(10);
+        }
+    }
+
+    private static long getCpuTime(ThreadMXBean threadBean, List<Thread> threads) {
+        long total = 0;
+        for (Thread thread : threads) total += Math.max(0, threadBean.getThreadCpuTime(thread.getId()));
+        return total;
+    }
+
+}
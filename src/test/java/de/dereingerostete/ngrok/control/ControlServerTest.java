@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.control;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlServerTest {
+
+    @Test
+    void acceptsLoopbackHosts() {
+        for (String host : new String[]{"localhost", "127.0.0.1", "[::1]", "localhost:4041", "127.0.0.1:4041",
+                "[::1]:4041", "LocalHost:4041"}) {
+            assertTrue(ControlServer.isLoopbackHost(host), host);
+        }
+    }
+
+    @Test
+    void rejectsOtherHosts() {
+        for (String host : new String[]{"attacker.example.com", "attacker.example.com:4041", "127.0.0.1.example.com",
+                "localhost.example.com", "[::1", "", "0.0.0.0:4041"}) {
+            assertFalse(ControlServer.isLoopbackHost(host), host);
+        }
+        assertFalse(ControlServer.isLoopbackHost(null));
+    }
+
+}
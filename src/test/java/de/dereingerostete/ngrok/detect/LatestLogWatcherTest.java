@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.detect;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatestLogWatcherTest {
+    private static final String STARTED = "[12:00:00] [Server thread/INFO]: Started serving on ";
+    private static final String HOSTED = "[12:00:00] [Render thread/INFO]: [CHAT] Local game hosted on port ";
+    private final BlockingQueue<Integer> ports = new LinkedBlockingQueue<>();
+    private @TempDir Path minecraftFolder;
+    private Path logFile;
+    private LatestLogWatcher watcher;
+
+    @BeforeEach
+    void startWatcher() throws IOException {
+        Path logsFolder = Files.createDirectory(minecraftFolder.resolve("logs"));
+        logFile = logsFolder.resolve("latest.log");
+        Files.writeString(logFile, STARTED + "25000\n");
+
+        watcher = new LatestLogWatcher(minecraftFolder, ports::add);
+        watcher.start();
+    }
+
+    @AfterEach
+    void closeWatcher() throws IOException {
+        watcher.close();
+    }
+
+    @Test
+    void publishesAppendedPortsOnce() throws Exception {
+        append("[12:00:00] [Render thread/INFO]: Loading world\n");
+        append(STARTED + "25001\n" + HOSTED + "25001\n");
+        assertEquals(25001, awaitPort());
+
+        append(HOSTED + "25001\n");
+        append(STARTED + "25002\n");
+        assertEquals(25002, awaitPort());
+        assertNoMorePorts();
+    }
+
+    @Test
+    void joinsLinesWrittenInParts() throws Exception {
+        append(STARTED + "250");
+        append("03\n");
+        assertEquals(25003, awaitPort());
+    }
+
+    @Test
+    void rereadsRotatedLog() throws Exception {
+        append(STARTED + "25004\n");
+        assertEquals(25004, awaitPort());
+
+        // Minecraft moves the old log away and starts a new latest.log
+        Path newLog = minecraftFolder.resolve("new.log");
+        Files.writeString(newLog, STARTED + "25004\n");
+        Files.move(newLog, logFile, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(25004, awaitPort());
+        assertNoMorePorts();
+    }
+
+    @Test
+    void rereadsTruncatedLog() throws Exception {
+        append(STARTED + "25005\n");
+        assertEquals(25005, awaitPort());
+
+        Files.writeString(logFile, STARTED + "25006\n", StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(25006, awaitPort());
+        assertNoMorePorts();
+    }
+
+    private void append(String text) throws IOException {
+        Files.writeString(logFile, text, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    private int awaitPort() throws InterruptedException {
+        Integer port = ports.poll(10, TimeUnit.SECONDS);
+        assertNotNull(port, "No port was published");
+        return port;
+    }
+
+    private void assertNoMorePorts() throws InterruptedException {
+        assertNull(ports.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+}
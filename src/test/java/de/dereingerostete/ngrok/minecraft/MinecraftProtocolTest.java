@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.minecraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinecraftProtocolTest {
+
+    @Test
+    void varIntRoundTrip() throws IOException {
+        int[] values = {0, 1, 127, 128, 255, 25565, 2097151, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (int value : values) {
+            ByteBuffer buffer = ByteBuffer.allocate(5);
+            MinecraftProtocol.writeVarInt(buffer, value);
+            assertEquals(MinecraftProtocol.getVarIntSize(value), buffer.position(), "Size of " + value);
+
+            assertEquals(value, MinecraftProtocol.readVarInt(buffer.flip()));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    void incompleteVarIntKeepsPosition() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0xDD, (byte) 0xC7});
+        assertNull(MinecraftProtocol.readVarInt(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void tooLongVarIntFails() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01});
+        assertThrows(IOException.class, () -> MinecraftProtocol.readVarInt(buffer));
+    }
+
+    @Test
+    void statusRequestContainsHandshakeAddress() throws IOException {
+        ByteBuffer request = MinecraftProtocol.createStatusRequest("survival.example.com", 25565);
+        assertEquals("survival.example.com", MinecraftProtocol.readHandshakeAddress(request));
+        assertEquals(0, request.position());
+
+        // Status request packet follows the handshake
+        assertEquals(0x00, request.get(request.limit() - 1));
+        assertEquals(0x01, request.get(request.limit() - 2));
+    }
+
+    @Test
+    void partialHandshakeNeedsMoreData() throws IOException {
+        ByteBuffer request = MinecraftProtocol.createStatusRequest("example.com", 25565);
+        for (int length = 0; length < request.limit() - 2; length++) {
+            ByteBuffer partial = request.duplicate().limit(length);
+            assertNull(MinecraftProtocol.readHandshakeAddress(partial), "Length " + length);
+        }
+    }
+
+    @Test
+    void legacyPingHasNoAddress() throws IOException {
+        assertEquals("", MinecraftProtocol.readHandshakeAddress(ByteBuffer.wrap(new byte[]{(byte) 0xFE, 0x01})));
+    }
+
+    @Test
+    void invalidHandshakeFails() {
+        ByteBuffer wrongId = ByteBuffer.wrap(new byte[]{0x02, 0x05, 0x00});
+        assertThrows(IOException.class, () -> MinecraftProtocol.readHandshakeAddress(wrongId));
+
+        ByteBuffer tooLong = ByteBuffer.allocate(5);
+        MinecraftProtocol.writeVarInt(tooLong, 100_000);
+        assertThrows(IOException.class, () -> MinecraftProtocol.readHandshakeAddress(tooLong.flip()));
+    }
+
+    @Test
+    void readsStatusResponse() throws IOException {
+        String json = "{\"description\":\"A Minecraft Server\",\"players\":{\"max\":20,\"online\":1}}";
+        ByteBuffer response = createStatusResponse(json);
+        assertEquals(json, MinecraftProtocol.readStatusResponse(response));
+
+        ByteBuffer partial = response.duplicate().limit(response.limit() - 1);
+        assertNull(MinecraftProtocol.readStatusResponse(partial));
+    }
+
+    static ByteBuffer createStatusResponse(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + MinecraftProtocol.getVarIntSize(bytes.length) + bytes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(MinecraftProtocol.getVarIntSize(length) + length);
+        MinecraftProtocol.writeVarInt(buffer, length);
+        MinecraftProtocol.writeVarInt(buffer, 0x00);
+        MinecraftProtocol.writeVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+        return buffer.flip();
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.minecraft;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusPingerTest {
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+    private final List<ServerSocket> servers = new ArrayList<>();
+    private volatile long acceptedAt; // System.nanoTime() the fake Minecraft server accepted the ping
+
+    @AfterEach
+    void closeServers() throws IOException {
+        for (ServerSocket server : servers) server.close();
+    }
+
+    @Test
+    void findsAnsweringServer() throws IOException {
+        InetSocketAddress minecraft = startMinecraftServer("{\"description\":{\"text\":\"§aHello\"}," +
+                "\"version\":{\"name\":\"1.20.1\",\"protocol\":763},\"players\":{\"max\":8,\"online\":2}}");
+        InetSocketAddress silent = startSilentServer();
+
+        List<ServerStatus> results = new StatusPinger(4, 1000).ping(List.of(silent, minecraft));
+        assertEquals(1, results.size());
+
+        ServerStatus status = results.get(0);
+        assertEquals(minecraft, status.getAddress());
+        assertEquals("Hello", status.getMotd());
+        assertEquals("1.20.1", status.getVersion());
+        assertEquals(763, status.getProtocol());
+        assertEquals(2, status.getOnlinePlayers());
+        assertEquals(8, status.getMaxPlayers());
+    }
+
+    @Test
+    void everyProbeExpiresByItsOwnDeadline() throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) addresses.add(startSilentServer());
+
+        // Two rounds of four probes, each round times out after 200ms
+        long start = System.nanoTime();
+        assertTrue(new StatusPinger(4, 200).ping(addresses).isEmpty());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 400 && elapsed < 2000, "Took " + elapsed + "ms");
+    }
+
+    @Test
+    void closedProbesFreeTheirSlot() throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        addresses.add(startSilentServer()); // Holds one slot until it expires
+        for (int i = 0; i < 50; i++) addresses.add(getClosedPort());
+        InetSocketAddress minecraft = startMinecraftServer("{\"description\":\"Late\"}");
+        addresses.add(minecraft);
+
+        // With two slots, the refused ports must not wait behind the silent server
+        long start = System.nanoTime();
+        List<ServerStatus> results = new StatusPinger(2, 3000).ping(addresses);
+        long pingedAfter = TimeUnit.NANOSECONDS.toMillis(acceptedAt - start);
+
+        assertEquals(1, results.size());
+        assertEquals(minecraft, results.get(0).getAddress());
+        assertTrue(pingedAfter < 1000, "Server was pinged after " + pingedAfter + "ms");
+    }
+
+    private InetSocketAddress startSilentServer() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, LOOPBACK);
+        servers.add(server);
+        return new InetSocketAddress(LOOPBACK, server.getLocalPort());
+    }
+
+    private static InetSocketAddress getClosedPort() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, LOOPBACK)) {
+            return new InetSocketAddress(LOOPBACK, server.getLocalPort());
+        }
+    }
+
+    private InetSocketAddress startMinecraftServer(String json) throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, LOOPBACK);
+        servers.add(server);
+
+        Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                acceptedAt = System.nanoTime();
+                InputStream input = socket.getInputStream();
+                ByteBuffer request = ByteBuffer.allocate(1024);
+                while (MinecraftProtocol.readHandshakeAddress(request.duplicate().flip()) == null) {
+                    int read = input.read(request.array(), request.position(), request.remaining());
+                    if (read == -1) return;
+                    request.position(request.position() + read);
+                }
+
+                ByteBuffer response = MinecraftProtocolTest.createStatusResponse(json);
+                OutputStream output = socket.getOutputStream();
+                output.write(response.array(), 0, response.limit());
+                output.flush();
+                input.read(); // Wait until the pinger closes the connection
+            } catch (IOException ignored) {}
+        }, "FakeMinecraftServer");
+        thread.setDaemon(true);
+        thread.start();
+        return new InetSocketAddress(LOOPBACK, server.getLocalPort());
+    }
+
+}
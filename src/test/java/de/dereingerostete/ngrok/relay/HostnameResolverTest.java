@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import de.dereingerostete.ngrok.Benchmark;
+import de.dereingerostete.ngrok.metrics.Histogram;
+import de.dereingerostete.ngrok.minecraft.MinecraftProtocol;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostnameResolverTest {
+    private static final InetSocketAddress PLAYER = new InetSocketAddress(InetAddress.getLoopbackAddress(), 50000);
+    private static final InetSocketAddress FALLBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 25565);
+
+    @Test
+    void routesByHandshakeAddress() throws IOException {
+        HostnameResolver resolver = createResolver();
+        assertTrue(resolver.needsInitialData());
+
+        assertEquals(new InetSocketAddress(InetAddress.getLoopbackAddress(), 25566),
+                resolver.resolve(PLAYER, handshake("creative.example.com")));
+        assertEquals(new InetSocketAddress("127.0.0.2", 25567), resolver.resolve(PLAYER, handshake("survival.example.com")));
+        assertEquals(2, resolver.getRoutingTimes().getCount());
+    }
+
+    @Test
+    void normalizesHostNames() throws IOException {
+        HostnameResolver resolver = createResolver();
+        InetSocketAddress creative = new InetSocketAddress(InetAddress.getLoopbackAddress(), 25566);
+
+        assertEquals(creative, resolver.resolve(PLAYER, handshake("Creative.Example.COM")));
+        assertEquals(creative, resolver.resolve(PLAYER, handshake("creative.example.com.")));
+        assertEquals(creative, resolver.resolve(PLAYER, handshake("creative.example.com\0FML2\0")));
+    }
+
+    @Test
+    void unknownHostsAndLegacyPingsUseFallback() throws IOException {
+        HostnameResolver resolver = createResolver();
+        assertEquals(FALLBACK, resolver.resolve(PLAYER, handshake("unknown.example.com")));
+        assertEquals(FALLBACK, resolver.resolve(PLAYER, ByteBuffer.wrap(new byte[]{(byte) 0xFE, 0x01})));
+    }
+
+    @Test
+    void waitsForCompleteHandshake() throws IOException {
+        ByteBuffer handshake = handshake("creative.example.com");
+        ByteBuffer partial = handshake.duplicate().limit(handshake.limit() / 2);
+        assertNull(createResolver().resolve(PLAYER, partial));
+    }
+
+    @Test
+    void skipsInvalidRoutes() throws IOException {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("valid.example.com", 25570);
+        config.put("invalid.example.com", "not a port");
+        HostnameResolver resolver = HostnameResolver.fromConfig(config, FALLBACK);
+
+        assertEquals(25570, resolver.resolve(PLAYER, handshake("valid.example.com")).getPort());
+        assertEquals(FALLBACK, resolver.resolve(PLAYER, handshake("invalid.example.com")));
+    }
+
+    /**
+     * Measures parsing the handshake and choosing the route with the routing times of the resolver
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    void benchmarkRouting() throws Exception {
+        Map<String, Object> config = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) config.put("server" + i + ".example.com", 25600 + i);
+        HostnameResolver resolver = HostnameResolver.fromConfig(config, FALLBACK);
+
+        // Routed, routed with a mod loader suffix and unknown hosts
+        ByteBuffer[] handshakes = {handshake("server42.example.com"), handshake("Server7.Example.com\0FML2\0"),
+                handshake("unknown.example.com")};
+        int count = 100_000;
+        Benchmark.Round round = () -> {
+            for (int index = 0; index < count; index++) {
+                if (resolver.resolve(PLAYER, handshakes[index % handshakes.length].duplicate()) == null) {
+                    throw new AssertionError("Handshake was not parsed");
+                }
+            }
+        };
+
+        Histogram routingTimes = resolver.getRoutingTimes();
+        for (int index = 0; index < 5; index++) round.run();
+        routingTimes.reset(); // Only the measured rounds are in the histogram
+        long time = Benchmark.measure(0, 10, round);
+
+        assertEquals(10L * count, routingTimes.getCount());
+        Benchmark.report("HostnameResolver", "%.1f ns per connection, routing times p50 %d ns, p99 %d ns, max %d ns",
+                (double) time / count, routingTimes.getPercentile(50), routingTimes.getPercentile(99), routingTimes.getMax());
+        assertTrue(routingTimes.getPercentile(50) < 50_000, "Routing takes longer than 50 us");
+    }
+
+    private static HostnameResolver createResolver() {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("creative.example.com", 25566);
+        config.put("Survival.Example.com", "127.0.0.2:25567");
+        return HostnameResolver.fromConfig(config, FALLBACK);
+    }
+
+    /**
+     * @return the handshake of a status request, followed by the status request packet
+     */
+    private static ByteBuffer handshake(String host) {
+        return MinecraftProtocol.createStatusRequest(host, 25565);
+    }
+
+}
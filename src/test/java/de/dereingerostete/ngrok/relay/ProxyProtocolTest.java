@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProxyProtocolTest {
+    private static final byte[] SIGNATURE = {0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A};
+
+    @Test
+    void readsIPv4Source() throws IOException {
+        ByteBuffer buffer = createHeader(0x21, 0x11, new byte[]{(byte) 203, 0, 113, 7}, new byte[]{127, 0, 0, 1}, 51234, 25565);
+        buffer.put(new byte[]{0x10, 0x00}).flip(); // Start of the Minecraft handshake
+
+        ProxyProtocol.Header header = ProxyProtocol.read(buffer);
+        assertNotNull(header);
+        assertEquals(16 + 12, header.getLength());
+        assertEquals(new InetSocketAddress(InetAddress.getByName("203.0.113.7"), 51234), header.getSourceAddress());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void readsIPv6Source() throws IOException {
+        byte[] source = InetAddress.getByName("2001:db8::1").getAddress();
+        byte[] destination = InetAddress.getByName("::1").getAddress();
+        ByteBuffer buffer = createHeader(0x21, 0x21, source, destination, 40000, 25565).flip();
+
+        ProxyProtocol.Header header = ProxyProtocol.read(buffer);
+        assertNotNull(header);
+        assertEquals(16 + 36, header.getLength());
+        assertEquals(new InetSocketAddress(InetAddress.getByName("2001:db8::1"), 40000), header.getSourceAddress());
+    }
+
+    @Test
+    void localCommandHasNoSource() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16).put(SIGNATURE).put((byte) 0x20).put((byte) 0x00).putShort((short) 0).flip();
+
+        ProxyProtocol.Header header = ProxyProtocol.read(buffer);
+        assertNotNull(header);
+        assertEquals(16, header.getLength());
+        assertNull(header.getSourceAddress());
+    }
+
+    @Test
+    void partialHeaderNeedsMoreData() throws IOException {
+        ByteBuffer buffer = createHeader(0x21, 0x11, new byte[4], new byte[4], 1, 2).flip();
+        for (int length = 0; length < buffer.limit(); length++) {
+            assertNull(ProxyProtocol.read(buffer.duplicate().limit(length)), "Length " + length);
+        }
+    }
+
+    @Test
+    void rejectsInvalidHeaders() {
+        ByteBuffer handshake = ByteBuffer.wrap(new byte[]{0x10, 0x00, (byte) 0xFF, 0x05});
+        assertThrows(IOException.class, () -> ProxyProtocol.read(handshake));
+
+        ByteBuffer version1 = createHeader(0x11, 0x11, new byte[4], new byte[4], 1, 2).flip();
+        assertThrows(IOException.class, () -> ProxyProtocol.read(version1));
+
+        ByteBuffer tooShort = ByteBuffer.allocate(20).put(SIGNATURE).put((byte) 0x21).put((byte) 0x11)
+                .putShort((short) 4).put(new byte[4]).flip();
+        assertThrows(IOException.class, () -> ProxyProtocol.read(tooShort));
+    }
+
+    /**
+     * @return the header in write mode, so more bytes can be appended
+     */
+    private static ByteBuffer createHeader(int versionCommand, int family, byte[] source, byte[] destination,
+                                           int sourcePort, int destinationPort) {
+        int length = source.length * 2 + 4;
+        ByteBuffer buffer = ByteBuffer.allocate(16 + length + 16);
+        buffer.put(SIGNATURE).put((byte) versionCommand).put((byte) family).putShort((short) length);
+        buffer.put(source).put(destination).putShort((short) sourcePort).putShort((short) destinationPort);
+        return buffer;
+    }
+
+}
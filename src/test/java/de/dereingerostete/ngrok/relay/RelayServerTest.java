@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import de.dereingerostete.ngrok.Benchmark;
+import de.dereingerostete.ngrok.metrics.MetricsSnapshot;
+import de.dereingerostete.ngrok.metrics.TunnelMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayServerTest {
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+    private ServerSocket backend;
+
+    /**
+     * Starts a server echoing everything it receives
+     */
+    @BeforeEach
+    void startBackend() throws IOException {
+        backend = new ServerSocket(0, 50, LOOPBACK);
+        Thread thread = new Thread(() -> {
+            while (!backend.isClosed()) {
+                try {
+                    Socket socket = backend.accept();
+                    Thread echo = new Thread(() -> {
+                        try (socket) {
+                            socket.getInputStream().transferTo(socket.getOutputStream());
+                        } catch (IOException ignored) {}
+                    }, "EchoThread");
+                    echo.setDaemon(true);
+                    echo.start();
+                } catch (IOException ignored) {}
+            }
+        }, "EchoServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @AfterEach
+    void stopBackend() throws IOException {
+        backend.close();
+    }
+
+    @Test
+    void relaysDataAndRecordsMetrics() throws Exception {
+        TunnelMetrics metrics = new TunnelMetrics("test");
+        RelayServer server = new RelayServer(2, 16 * 1024, new AdmissionController(0, 0, 0, 0, 0));
+        try {
+            RelayListener listener = server.open(BackendResolver.fixed(getBackendAddress()), metrics, false);
+            try (Socket client = connect(listener)) {
+                assertEquals("hello", echo(client, "hello"));
+                assertEquals(1, metrics.snapshot().getOpenConnections());
+            }
+
+            waitFor(() -> metrics.snapshot().getOpenConnections() == 0);
+            MetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(1, snapshot.getConnections());
+            assertEquals(5, snapshot.getBytesIn());
+            assertEquals(5, snapshot.getBytesOut());
+            assertEquals(0, snapshot.getRejectedConnections());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void rejectedConnectionsAreNotCountedAsOpened() throws Exception {
+        TunnelMetrics metrics = new TunnelMetrics("test");
+        AdmissionController admission = new AdmissionController(1, 0, 0, 0, 0);
+        RelayServer server = new RelayServer(1, 16 * 1024, admission);
+        try {
+            RelayListener listener = server.open(BackendResolver.fixed(getBackendAddress()), metrics, false);
+            try (Socket admitted = connect(listener); Socket rejected = connect(listener)) {
+                assertEquals("first", echo(admitted, "first"));
+                assertEquals(-1, rejected.getInputStream().read());
+
+                MetricsSnapshot snapshot = metrics.snapshot();
+                assertEquals(1, snapshot.getConnections());
+                assertEquals(1, snapshot.getOpenConnections());
+                assertEquals(1, snapshot.getRejectedConnections());
+                assertEquals(1, admission.getRejected());
+            }
+
+            waitFor(() -> metrics.snapshot().getOpenConnections() == 0);
+            assertEquals(0, admission.getConnections());
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Compares round trips and throughput through the relay with direct connections to the echo backend
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    void benchmarkAgainstDirectConnection() throws Exception {
+        RelayServer server = new RelayServer(2, 64 * 1024, new AdmissionController(0, 0, 0, 0, 0));
+        try {
+            RelayListener listener = server.open(BackendResolver.fixed(getBackendAddress()), new TunnelMetrics("test"), false);
+            try (Socket direct = new Socket(LOOPBACK, backend.getLocalPort()); Socket relayed = connect(listener)) {
+                direct.setTcpNoDelay(true);
+                relayed.setTcpNoDelay(true);
+
+                long[] directLatencies = measureRoundTrips(direct);
+                long[] relayLatencies = measureRoundTrips(relayed);
+                Benchmark.report("Round trip direct", "median %.1f us, p99 %.1f us",
+                        directLatencies[0] / 1e3, directLatencies[1] / 1e3);
+                Benchmark.report("Round trip relayed", "median %.1f us, p99 %.1f us",
+                        relayLatencies[0] / 1e3, relayLatencies[1] / 1e3);
+
+                int bytes = 64 * 1024 * 1024;
+                long directTime = Benchmark.measure(1, 3, () -> transfer(direct, bytes));
+                long relayTime = Benchmark.measure(1, 3, () -> transfer(relayed, bytes));
+                Benchmark.report("Throughput direct", "%.0f MB/s", bytes / (directTime / 1e9) / 1e6);
+                Benchmark.report("Throughput relayed", "%.0f MB/s", bytes / (relayTime / 1e9) / 1e6);
+
+                // The relay copies every byte once more, but must stay in the same order of magnitude
+                assertTrue(relayTime < directTime * 4, "Relay took " + relayTime + " ns, direct " + directTime + " ns");
+                assertTrue(relayLatencies[0] < directLatencies[0] + 1_000_000, "Relay adds more than 1 ms per round trip");
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * @return the median and 99th percentile of the round trips of small messages in nanoseconds
+     */
+    private static long[] measureRoundTrips(Socket socket) throws IOException {
+        byte[] message = new byte[64];
+        int warmup = 2_000;
+        long[] latencies = new long[10_000];
+        for (int index = -warmup; index < latencies.length; index++) {
+            long start = System.nanoTime();
+            socket.getOutputStream().write(message);
+            if (socket.getInputStream().readNBytes(message, 0, message.length) != message.length) throw new IOException("Closed");
+            if (index >= 0) latencies[index] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(latencies);
+        return new long[]{latencies[latencies.length / 2], latencies[latencies.length * 99 / 100]};
+    }
+
+    /**
+     * Writes the bytes on another thread while reading their echo
+     */
+    private static void transfer(Socket socket, int bytes) throws Exception {
+        byte[] chunk = new byte[64 * 1024];
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                for (int written = 0; written < bytes; written += chunk.length) socket.getOutputStream().write(chunk);
+            } catch (IOException exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+
+        byte[] buffer = new byte[64 * 1024];
+        for (int read = 0; read < bytes; ) {
+            int count = socket.getInputStream().read(buffer);
+            if (count == -1) throw new IOException("Closed after " + read + " bytes");
+            read += count;
+        }
+        writer.get();
+    }
+
+    private InetSocketAddress getBackendAddress() {
+        return new InetSocketAddress(LOOPBACK, backend.getLocalPort());
+    }
+
+    private static Socket connect(RelayListener listener) throws IOException {
+        Socket socket = new Socket(LOOPBACK, listener.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static String echo(Socket socket, String message) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write(message.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+
+        InputStream input = socket.getInputStream();
+        byte[] received = input.readNBytes(message.length());
+        return new String(received, StandardCharsets.UTF_8);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition was not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+}
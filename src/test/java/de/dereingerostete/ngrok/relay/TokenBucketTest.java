@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.relay;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    private static final long TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    void burstDoesNotWait() {
+        TokenBucket bucket = new TokenBucket(1000, 500);
+        assertEquals(0, bucket.consume(250));
+        assertEquals(0, bucket.consume(250));
+    }
+
+    @Test
+    void waitGrowsWithDebt() {
+        TokenBucket bucket = new TokenBucket(1000, 500);
+        bucket.consume(500);
+
+        // 1000 bytes more than the burst at 1000 bytes per second
+        assertAround(TimeUnit.SECONDS.toNanos(1), bucket.consume(1000));
+        assertAround(TimeUnit.SECONDS.toNanos(2), bucket.consume(1000));
+    }
+
+    @Test
+    void idleBucketRefills() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10_000, 1000);
+        bucket.consume(1000);
+        assertTrue(bucket.consume(500) > 0);
+
+        Thread.sleep(200); // Refills 2000 bytes, but never more than the burst
+        assertEquals(0, bucket.consume(1000));
+        assertTrue(bucket.consume(500) > 0);
+    }
+
+    @Test
+    void rejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 100));
+    }
+
+    @Test
+    void admissionLimitsConnectionsPerAddress() throws Exception {
+        InetAddress first = InetAddress.getByName("203.0.113.1");
+        InetAddress second = InetAddress.getByName("203.0.113.2");
+        AdmissionController admission = new AdmissionController(3, 2, 0, 0, 0);
+
+        assertTrue(admission.tryAdmit(first));
+        assertTrue(admission.tryAdmit(first));
+        assertFalse(admission.tryAdmit(first));
+        assertTrue(admission.tryAdmit(second));
+        assertFalse(admission.tryAdmit(second)); // Global limit
+        assertEquals(2, admission.getRejected());
+
+        admission.release(first);
+        assertTrue(admission.tryAdmit(second));
+        assertEquals(3, admission.getConnections());
+    }
+
+    @Test
+    void admissionThrottlesAboveBandwidth() {
+        AdmissionController admission = new AdmissionController(0, 0, 0, 1000, 100);
+        assertTrue(admission.isLimitingBandwidth());
+
+        TokenBucket bucket = admission.createConnectionBucket();
+        assertNotNull(bucket);
+        assertEquals(0, admission.consume(bucket, 100));
+        assertTrue(admission.consume(bucket, 1000) > 0);
+        assertEquals(1, admission.getThrottled());
+
+        AdmissionController unlimited = new AdmissionController(0, 0, 0, 0, 0);
+        assertFalse(unlimited.isLimitingBandwidth());
+        assertNull(unlimited.createConnectionBucket());
+    }
+
+    private static void assertAround(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) < TOLERANCE_NANOS, "Expected about " + expected + " but was " + actual);
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtifactCacheTest {
+    private static final String METADATA_PATH = "com/example/demo/maven-metadata.xml";
+    private static final String JAR_PATH = "com/example/demo/1.1/demo-1.1.jar";
+    private static final String METADATA = "<metadata><versioning><latest>1.1</latest><release>1.1</release>" +
+            "<versions><version>1.0</version><version>1.1</version></versions></versioning></metadata>";
+    private final Map<String, String> files = new ConcurrentHashMap<>();
+    private final Map<String, String> checksums = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean failing;
+    private HttpServer server;
+    private ArtifactCache cache;
+    private @TempDir Path directory;
+
+    /**
+     * Starts a repository serving the files with ETags and their SHA-1 checksums in the Maven layout
+     */
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/repo/", this::handle);
+        server.start();
+
+        URI repository = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/repo/");
+        cache = new ArtifactCache(repository, directory, HttpClient.newHttpClient());
+        files.put(METADATA_PATH, METADATA);
+        files.put(JAR_PATH, "jar content");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring("/repo/".length());
+        requests.add(path);
+        if (failing) {
+            respond(exchange, 500, "Internal server error");
+            return;
+        }
+
+        boolean checksum = path.endsWith(".sha1");
+        String filePath = checksum ? path.substring(0, path.length() - ".sha1".length()) : path;
+        String content = files.get(filePath);
+        if (content == null) {
+            respond(exchange, 404, "Not found");
+            return;
+        }
+
+        if (checksum) {
+            respond(exchange, 200, checksums.getOrDefault(filePath, sha1(content) + "  " + filePath));
+            return;
+        }
+
+        String etag = "\"" + sha1(content) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Last-Modified", "Sat, 01 Jul 2023 12:00:00 GMT");
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+        } else respond(exchange, 200, content);
+    }
+
+    @Test
+    void downloadsAndCachesReleasedFiles() throws IOException {
+        Path file = cache.get(JAR_PATH, false);
+        assertEquals("jar content", Files.readString(file));
+        assertEquals(directory.resolve(JAR_PATH), file);
+        assertEquals(List.of(JAR_PATH, JAR_PATH + ".sha1"), requests);
+
+        requests.clear();
+        assertEquals(file, cache.get(JAR_PATH, false));
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void revalidatesWithoutDownloadingAgain() throws IOException {
+        Path file = cache.get(METADATA_PATH, true);
+        requests.clear();
+
+        assertEquals(file, cache.get(METADATA_PATH, true));
+        assertEquals(List.of(METADATA_PATH), requests); // 304, no checksum is requested
+        assertEquals(METADATA, Files.readString(file));
+    }
+
+    @Test
+    void downloadsChangedFiles() throws IOException {
+        cache.get(METADATA_PATH, true);
+        String changed = METADATA.replace("1.1", "1.2");
+        files.put(METADATA_PATH, changed);
+
+        assertEquals(changed, Files.readString(cache.get(METADATA_PATH, true)));
+    }
+
+    @Test
+    void usesCachedFileWhenOffline() throws IOException {
+        Path file = cache.get(METADATA_PATH, true);
+        server.stop(0);
+
+        assertEquals(file, cache.get(METADATA_PATH, true));
+        assertEquals(METADATA, Files.readString(file));
+        assertThrows(IOException.class, () -> cache.get(JAR_PATH, false));
+    }
+
+    @Test
+    void usesCachedFileOnServerError() throws IOException {
+        Path file = cache.get(METADATA_PATH, true);
+        failing = true;
+
+        assertEquals(file, cache.get(METADATA_PATH, true));
+        assertThrows(IOException.class, () -> cache.get("com/example/demo/1.0/demo-1.0.jar", false));
+    }
+
+    @Test
+    void rejectsChecksumMismatch() throws IOException {
+        checksums.put(JAR_PATH, sha1("other content"));
+
+        IOException exception = assertThrows(IOException.class, () -> cache.get(JAR_PATH, false));
+        assertTrue(exception.getMessage().startsWith("Checksum mismatch"), exception.getMessage());
+        assertFalse(Files.exists(directory.resolve(JAR_PATH)));
+        assertFalse(Files.exists(directory.resolve(JAR_PATH + ".part")));
+    }
+
+    @Test
+    void rejectsPathsOutsideTheCache() {
+        assertThrows(IOException.class, () -> cache.get("../outside.jar", false));
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void resolvesArtifactsFromTheCache() throws IOException {
+        MavenArtifact artifact = new MavenArtifact("com/example", "demo");
+        assertEquals("1.1", artifact.getLatestVersion(cache));
+
+        File output = directory.resolve("demo.jar").toFile();
+        artifact.downloadArtifact(cache, "1.1", output);
+        assertEquals("jar content", Files.readString(output.toPath()));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static String sha1(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte value : hash) builder.append(String.format("%02x", value));
+            return builder.toString();
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+}
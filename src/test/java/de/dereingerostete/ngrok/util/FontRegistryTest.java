@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FontRegistryTest {
+
+    /**
+     * Runs as one test, as the fonts are loaded once per JVM
+     */
+    @Test
+    void replacesFallbackFontsOnceLoaded() throws Exception {
+        assertFalse(FontRegistry.ready().isDone());
+        Font fallback = FontRegistry.getBoldFont();
+        assertEquals(Font.DIALOG, fallback.getFamily(), "Fonts must not be loaded by the caller");
+        assertTrue(fallback.isBold());
+        assertEquals(16, fallback.getSize());
+
+        JPanel panel = new JPanel();
+        JLabel label = new JLabel("Title");
+        label.setFont(fallback);
+        JLabel custom = new JLabel("Custom");
+        Font customFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+        custom.setFont(customFont);
+        panel.add(label);
+        panel.add(custom);
+        FontRegistry.refreshWhenLoaded(panel);
+
+        FontRegistry.load();
+        assertTrue(FontRegistry.ready().isDone());
+        EventQueue.invokeAndWait(() -> {}); // The refresh is queued on the event dispatch thread
+
+        Font loaded = FontRegistry.getBoldFont();
+        assertTrue(loaded.getFamily().startsWith("Kanit"), loaded.getFamily());
+        assertSame(loaded, FontRegistry.getBoldFont());
+        assertSame(loaded, label.getFont());
+        assertSame(customFont, custom.getFont());
+    }
+
+}
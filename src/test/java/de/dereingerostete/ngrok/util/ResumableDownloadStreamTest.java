@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumableDownloadStreamTest {
+    private static final byte[] CONTENT = new byte[200_000];
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int drops = 1;
+    private volatile int dropAfter = CONTENT.length / 2;
+    private volatile boolean ignoreRange;
+    private HttpServer server;
+
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ngrok.zip", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Drops the first responses after a part of the content, later responses honor the range unless it is ignored
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(String.valueOf(range));
+        boolean drop = requests.incrementAndGet() <= drops;
+        int start = range == null || ignoreRange ? 0 : Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+        try (OutputStream output = exchange.getResponseBody()) {
+            if (start > 0) {
+                exchange.getResponseHeaders().set("Content-Range",
+                        "bytes " + start + "-" + (CONTENT.length - 1) + "/" + CONTENT.length);
+                exchange.sendResponseHeaders(206, CONTENT.length - start);
+            } else {
+                exchange.sendResponseHeaders(200, CONTENT.length);
+            }
+
+            if (drop) {
+                output.write(CONTENT, start, Math.min(dropAfter, CONTENT.length - start));
+                output.flush();
+                return; // Closing before the announced length drops the connection
+            }
+            output.write(CONTENT, start, CONTENT.length - start);
+        }
+    }
+
+    private URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/ngrok.zip");
+    }
+
+    @Test
+    void resumesDroppedDownload() throws IOException {
+        List<Long> progress = new CopyOnWriteArrayList<>();
+
+        byte[] downloaded;
+        try (ResumableDownloadStream stream = new ResumableDownloadStream(getUrl(), (bytes, total) -> {
+            assertEquals(CONTENT.length, total);
+            progress.add(bytes);
+        })) {
+            downloaded = stream.readAllBytes();
+            assertEquals(CONTENT.length, stream.getPosition());
+        }
+
+        assertArrayEquals(CONTENT, downloaded);
+        assertEquals(2, requests.get());
+        assertEquals("null", ranges.get(0));
+        assertTrue(ranges.get(1).matches("bytes=\\d+-"), ranges.get(1));
+        assertEquals(CONTENT.length, progress.get(progress.size() - 1));
+    }
+
+    @Test
+    void resumesManyDropsWithProgress() throws IOException {
+        drops = 10; // More drops than retries, but every resumed response makes progress
+        dropAfter = 10_000;
+
+        try (ResumableDownloadStream stream = new ResumableDownloadStream(getUrl(), null, 1)) {
+            assertArrayEquals(CONTENT, stream.readAllBytes());
+        }
+        assertEquals(11, requests.get());
+    }
+
+    @Test
+    void failsImmediatelyIfRangeIsIgnored() throws IOException {
+        ignoreRange = true;
+
+        try (ResumableDownloadStream stream = new ResumableDownloadStream(getUrl(), null, 1)) {
+            IOException exception = assertThrows(IOException.class, stream::readAllBytes);
+            assertTrue(exception.getMessage().contains("resuming"), exception.getMessage());
+        }
+
+        // One resume after the drop, the ignored range is not retried
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void failsOnErrorStatus() {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/missing.zip";
+        assertThrows(IOException.class, () -> new ResumableDownloadStream(new URL(url), null));
+    }
+
+}
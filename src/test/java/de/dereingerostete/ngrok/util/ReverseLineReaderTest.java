@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2023 - DerEingerostete
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ */
+
+package de.dereingerostete.ngrok.util;
+
+import de.dereingerostete.ngrok.Benchmark;
+import de.dereingerostete.ngrok.util.config.ConfigUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.OptionalInt;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReverseLineReaderTest {
+    @TempDir Path folder;
+
+    @Test
+    void readsLinesBackwards() throws IOException {
+        Path file = write("first\nsecond\r\nthird");
+        assertEquals(List.of("third", "second", "first"), readAll(file, Long.MAX_VALUE));
+    }
+
+    @Test
+    void trailingNewlineYieldsEmptyLastLine() throws IOException {
+        Path file = write("a\nb\n");
+        assertEquals(List.of("", "b", "a"), readAll(file, Long.MAX_VALUE));
+    }
+
+    @Test
+    void emptyFileHasOneEmptyLine() throws IOException {
+        Path file = write("");
+        assertEquals(List.of(""), readAll(file, Long.MAX_VALUE));
+    }
+
+    @Test
+    void joinsLinesAcrossChunks() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) lines.add("[12:00:00] [Server thread/INFO]: Line " + i + " äöü €");
+        lines.add("x".repeat(200_000)); // Longer than several chunks
+        lines.add("last");
+        Path file = write(String.join("\n", lines));
+
+        List<String> expected = new ArrayList<>(lines);
+        Collections.reverse(expected);
+        assertEquals(expected, readAll(file, Long.MAX_VALUE));
+    }
+
+    @Test
+    void stopsAtByteBudget() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) content.append("line ").append(i).append('\n');
+        Path file = write(content.toString());
+
+        List<String> lines = readAll(file, 100_000);
+        assertFalse(lines.isEmpty());
+        assertEquals("", lines.get(0));
+        assertEquals("line 99999", lines.get(1));
+
+        // Only complete lines inside the budget are returned
+        int totalBytes = lines.stream().mapToInt(line -> line.length() + 1).sum();
+        assertTrue(totalBytes <= 100_000, "Read " + totalBytes + " bytes");
+        assertTrue(lines.get(lines.size() - 1).startsWith("line "));
+    }
+
+    /**
+     * Finds the last port in a synthetic 500 MB log, once with the port near the end and once without any port.
+     * The forward scan stands in for the former read of every line, which needs more heap than the file size.
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    void benchmarkLargeLog() throws Exception {
+        long size = 500L * 1024 * 1024;
+        Path withPort = writeLog("with-port.log", size, "[12:00:00] [Server thread/INFO]: Started serving on 25565\n");
+        Path withoutPort = writeLog("without-port.log", size, null);
+        long budget = 64L * 1024 * 1024; // Default of logScanLimit
+
+        int[] port = new int[1];
+        long reverseTime = Benchmark.measure(1, 5, () -> port[0] = findPortBackwards(withPort, budget));
+        assertEquals(25565, port[0]);
+        long forwardTime = Benchmark.measure(1, 3, () -> port[0] = findPortForwards(withPort));
+        assertEquals(25565, port[0]);
+        long budgetTime = Benchmark.measure(1, 3, () -> port[0] = findPortBackwards(withoutPort, budget));
+        assertEquals(-1, port[0]);
+
+        long allocated = Benchmark.getAllocatedBytes();
+        findPortBackwards(withoutPort, budget);
+        long budgetBytes = Benchmark.getAllocatedBytes() - allocated;
+
+        Benchmark.report("Reverse scan, port near the end", "%.2f ms", reverseTime / 1e6);
+        Benchmark.report("Forward scan of the whole file", "%.2f ms", forwardTime / 1e6);
+        Benchmark.report("Reverse scan without port", "%.2f ms, %d KiB allocated for 64 MiB", budgetTime / 1e6,
+                budgetBytes / 1024);
+        assertTrue(reverseTime < forwardTime, "The reverse scan is slower than the forward scan");
+    }
+
+    private static int findPortBackwards(Path file, long budget) throws IOException {
+        try (ReverseLineReader reader = new ReverseLineReader(file, budget)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                OptionalInt port = ConfigUtils.parsePortLine(line);
+                if (port.isPresent()) return port.getAsInt();
+            }
+        }
+        return -1;
+    }
+
+    private static int findPortForwards(Path file) throws IOException {
+        int port = -1;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                OptionalInt parsed = ConfigUtils.parsePortLine(line);
+                if (parsed.isPresent()) port = parsed.getAsInt();
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Writes a log of typical lines with the given size, followed by the last line if there is one
+     */
+    private Path writeLog(String name, long size, String lastLine) throws IOException {
+        StringBuilder block = new StringBuilder();
+        for (int i = 0; block.length() < 1024 * 1024; i++) {
+            block.append("[12:00:00] [Render thread/INFO]: [STDOUT]: Loaded mod resource ").append(i).append(" äöü\n");
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(block.toString().getBytes(StandardCharsets.UTF_8));
+
+        Path file = folder.resolve(name);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (channel.size() < size) {
+                channel.write(bytes.rewind());
+            }
+            if (lastLine != null) {
+                channel.write(ByteBuffer.wrap(lastLine.getBytes(StandardCharsets.UTF_8)));
+                channel.write(bytes.rewind().limit(16 * 1024)); // A few lines follow the port
+            }
+        }
+        return file;
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.resolve("latest.log");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<String> readAll(Path file, long byteBudget) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (ReverseLineReader reader = new ReverseLineReader(file, byteBudget)) {
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        }
+        return lines;
+    }
+
+}